@@ -5,6 +5,7 @@
 import jakarta.persistence.Id;
 import jakarta.persistence.MappedSuperclass;
 import lombok.Data;
+import lombok.experimental.FieldNameConstants;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
@@ -22,6 +23,7 @@
  */
 @Data
 @MappedSuperclass
+@FieldNameConstants
 @EntityListeners(AuditingEntityListener.class)
 public abstract class BaseEntity implements Serializable {
 
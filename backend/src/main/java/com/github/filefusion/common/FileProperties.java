@@ -8,7 +8,7 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
-import java.util.List;
+import java.util.Set;
 
 /**
  * FileProperties
@@ -23,16 +23,18 @@ public class FileProperties {
 
     private Duration lockTimeout;
     private Duration downloadLinkTimeout;
+    private Duration uploadSessionTimeout;
     private Boolean videoPlay;
     private Duration videoGenerateTimeout;
+    private Integer mediaJobWorkers;
     private Duration thumbnailGenerateTimeout;
     private Path dir;
     private Path uploadDir;
     private Path videoPlayDir;
-    private List<String> videoPlayMimeType;
+    private Set<String> videoPlayMimeType;
     private Path thumbnailDir;
-    private List<String> thumbnailImageMimeType;
-    private List<String> thumbnailVideoMimeType;
+    private Set<String> thumbnailImageMimeType;
+    private Set<String> thumbnailVideoMimeType;
 
     public void setDir(Path dir) throws IOException {
         if (!Files.exists(dir)) {
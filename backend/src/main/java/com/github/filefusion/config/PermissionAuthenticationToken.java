@@ -0,0 +1,26 @@
+package com.github.filefusion.config;
+
+import com.github.filefusion.user.model.AuthoritySet;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * PermissionAuthenticationToken
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public class PermissionAuthenticationToken extends JwtAuthenticationToken {
+
+    private final transient AuthoritySet authoritySet;
+
+    public PermissionAuthenticationToken(Jwt jwt, AuthoritySet authoritySet) {
+        super(jwt, authoritySet.getAuthorities());
+        this.authoritySet = authoritySet;
+    }
+
+    public AuthoritySet getAuthoritySet() {
+        return authoritySet;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.github.filefusion.config;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+import java.util.function.Supplier;
+
+/**
+ * PermissionExpressionHandler
+ * <p>
+ * Answers hasAuthority and hasAnyAuthority from the permission bits of the token instead of building a set per call.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public class PermissionExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    @Override
+    public EvaluationContext createEvaluationContext(Supplier<Authentication> authentication, MethodInvocation mi) {
+        EvaluationContext context = super.createEvaluationContext(authentication, mi);
+        if (context instanceof StandardEvaluationContext standardContext
+                && context.getRootObject().getValue() instanceof MethodSecurityExpressionOperations root) {
+            standardContext.setRootObject(new PermissionExpressionRoot(root));
+        }
+        return context;
+    }
+
+    public static final class PermissionExpressionRoot implements MethodSecurityExpressionOperations {
+
+        private final MethodSecurityExpressionOperations delegate;
+
+        private PermissionExpressionRoot(MethodSecurityExpressionOperations delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Authentication getAuthentication() {
+            return delegate.getAuthentication();
+        }
+
+        @Override
+        public boolean hasAuthority(String authority) {
+            if (delegate.getAuthentication() instanceof PermissionAuthenticationToken token) {
+                return token.getAuthoritySet().contains(authority);
+            }
+            return delegate.hasAuthority(authority);
+        }
+
+        @Override
+        public boolean hasAnyAuthority(String... authorities) {
+            if (delegate.getAuthentication() instanceof PermissionAuthenticationToken token) {
+                return token.getAuthoritySet().containsAny(authorities);
+            }
+            return delegate.hasAnyAuthority(authorities);
+        }
+
+        @Override
+        public boolean hasRole(String role) {
+            return delegate.hasRole(role);
+        }
+
+        @Override
+        public boolean hasAnyRole(String... roles) {
+            return delegate.hasAnyRole(roles);
+        }
+
+        @Override
+        public boolean permitAll() {
+            return delegate.permitAll();
+        }
+
+        @Override
+        public boolean denyAll() {
+            return delegate.denyAll();
+        }
+
+        @Override
+        public boolean isAnonymous() {
+            return delegate.isAnonymous();
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return delegate.isAuthenticated();
+        }
+
+        @Override
+        public boolean isRememberMe() {
+            return delegate.isRememberMe();
+        }
+
+        @Override
+        public boolean isFullyAuthenticated() {
+            return delegate.isFullyAuthenticated();
+        }
+
+        @Override
+        public boolean hasPermission(Object target, Object permission) {
+            return delegate.hasPermission(target, permission);
+        }
+
+        @Override
+        public boolean hasPermission(Object targetId, String targetType, Object permission) {
+            return delegate.hasPermission(targetId, targetType, permission);
+        }
+
+        @Override
+        public Object getFilterObject() {
+            return delegate.getFilterObject();
+        }
+
+        @Override
+        public void setFilterObject(Object filterObject) {
+            delegate.setFilterObject(filterObject);
+        }
+
+        @Override
+        public Object getReturnObject() {
+            return delegate.getReturnObject();
+        }
+
+        @Override
+        public void setReturnObject(Object returnObject) {
+            delegate.setReturnObject(returnObject);
+        }
+
+        @Override
+        public Object getThis() {
+            return delegate.getThis();
+        }
+
+    }
+
+}
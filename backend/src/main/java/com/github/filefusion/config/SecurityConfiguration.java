@@ -9,6 +9,8 @@
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.Nonnull;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -17,6 +19,7 @@
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -26,7 +29,6 @@
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtClaimNames;
@@ -44,7 +46,6 @@
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -62,14 +63,22 @@ public class SecurityConfiguration {
     private final WebServerFactory webServerFactory;
     private final UserService userService;
     private final JwtParser jwtParser;
+    private final MeterRegistry meterRegistry;
+    private final Timer additionalCheckTimer;
 
     @Autowired
     public SecurityConfiguration(SecurityProperties securityProperties,
                                  WebServerFactory webServerFactory,
-                                 UserService userService) {
+                                 UserService userService,
+                                 MeterRegistry meterRegistry) {
         this.securityProperties = securityProperties;
         this.webServerFactory = webServerFactory;
         this.userService = userService;
+        this.meterRegistry = meterRegistry;
+        this.additionalCheckTimer = Timer.builder("file_fusion.auth.check")
+                .description("Token session and user status check of an authenticated request")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
         this.jwtParser = Jwts.parser().verifyWith(securityProperties.getSecret().getPublicKey()).build();
     }
 
@@ -112,6 +121,11 @@ private void configureWhitelistAccess(HttpSecurity http) throws Exception {
         });
     }
 
+    @Bean
+    public static MethodSecurityExpressionHandler methodSecurityExpressionHandler() {
+        return new PermissionExpressionHandler();
+    }
+
     @Bean
     public JwtDecoder jwtDecoder() {
         return token -> {
@@ -134,6 +148,7 @@ private final class AdditionalCheckFilter extends OncePerRequestFilter {
         protected void doFilterInternal(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull FilterChain filterChain) throws ServletException, IOException {
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             if (authentication != null && authentication.isAuthenticated() && authentication instanceof JwtAuthenticationToken) {
+                Timer.Sample sample = Timer.start(meterRegistry);
                 try {
                     Jwt jwt = (Jwt) authentication.getPrincipal();
                     String userId = jwt.getSubject();
@@ -145,11 +160,12 @@ protected void doFilterInternal(@Nonnull HttpServletRequest request, @Nonnull Ht
                     UserInfo user = userService.getByIdFromCache(userId);
                     userService.verifyUserStatus(user);
 
-                    List<SimpleGrantedAuthority> grantedAuthorityList = user.getPermissionIds().stream().map(SimpleGrantedAuthority::new).toList();
-                    SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt, grantedAuthorityList));
+                    SecurityContextHolder.getContext().setAuthentication(new PermissionAuthenticationToken(jwt, user.getAuthoritySet()));
                 } catch (AuthenticationException e) {
                     SecurityContextHolder.clearContext();
                     throw e;
+                } finally {
+                    sample.stop(additionalCheckTimer);
                 }
             }
             filterChain.doFilter(request, response);
@@ -16,6 +16,8 @@ public final class FileAttribute {
     public static final String DOWNLOAD_ZIP_NAME = "download.zip";
     public static final String DOWNLOAD_THUMBNAIL_NAME = "thumbnail.webp";
     public static final String THUMBNAIL_FILE_SUFFIX = ".webp";
+    public static final int MAX_CHUNK_COUNT = 1 << 20;
+    public static final int MAX_SCROLL_PAGE_SIZE = 1000;
 
     public enum MimeType {
         FOLDER(MediaType.parseMediaType("custom/folder")),
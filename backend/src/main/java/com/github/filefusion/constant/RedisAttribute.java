@@ -10,12 +10,15 @@ public final class RedisAttribute {
 
     public static final String SEPARATOR = ":";
     public static final String CACHE_PREFIX = "cache:";
+    public static final String CACHE_INVALIDATION_PREFIX = "cache_invalidation:";
     public static final String TOKEN_PREFIX = "token:";
+    public static final String TOKEN_REVOCATION = "token_revocation";
     public static final String LOCK_PREFIX = "lock:";
-    public static final String DOWNLOAD_ID_PREFIX = "download:";
-    public static final String EVENT_PREFIX = "event:";
-    public static final String GENERATE_THUMBNAIL = "generate_thumbnail:";
-    public static final String GENERATE_MEDIA_DASH_PREFIX = "generate_media_dash:";
+    public static final String DOWNLOAD_MANIFEST_PREFIX = "download_manifest:";
+    public static final String UPLOAD_SESSION_PREFIX = "upload_session:";
+    public static final String UPLOAD_CHUNK_PREFIX = "upload_chunk:";
+    public static final String FILE_CRC32 = "file_crc32";
+    public static final String JOB_PREFIX = "job:";
 
     public enum LockType {
         task,
@@ -23,8 +26,4 @@ public enum LockType {
         cache
     }
 
-    public enum EventType {
-        file_upload_success,
-    }
-
 }
@@ -1,26 +1,27 @@
 package com.github.filefusion.event;
 
 import com.github.filefusion.common.FileProperties;
-import com.github.filefusion.constant.RedisAttribute;
+import com.github.filefusion.constant.FileAttribute;
 import com.github.filefusion.constant.VideoAttribute;
 import com.github.filefusion.file.entity.FileData;
-import com.github.filefusion.util.DistributedLock;
+import com.github.filefusion.util.JobQueue;
 import com.github.filefusion.util.file.FileUtil;
 import com.github.filefusion.util.file.MediaUtil;
+import com.github.filefusion.util.file.ThumbnailUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBlockingDeque;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.time.Duration;
 
 /**
  * FileUploadSuccessEvent
+ * <p>
+ * Media jobs are keyed by hash value, so the same file uploaded or viewed many times is processed once.
  *
  * @author hackyo
  * @since 2022/4/1
@@ -29,65 +30,94 @@
 @Component
 public class FileUploadSuccessEvent {
 
-    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
-    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+    private static final String MEDIA_DASH_QUEUE = "media_dash";
+    private static final String THUMBNAIL_QUEUE = "thumbnail";
+    private static final Duration VISIBILITY_TIMEOUT_BUFFER = Duration.ofMinutes(5);
+    private static final Duration MEDIA_DASH_RETRY_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration THUMBNAIL_RETRY_BACKOFF = Duration.ofSeconds(5);
 
     private final FileProperties fileProperties;
-    private final DistributedLock distributedLock;
-    private final RBlockingDeque<FileData> queue;
+    private final JobQueue<FileData> mediaDashQueue;
+    private final JobQueue<FileData> thumbnailQueue;
 
     @Autowired
     public FileUploadSuccessEvent(RedissonClient redissonClient,
-                                  DistributedLock distributedLock,
-                                  FileProperties fileProperties) {
+                                  FileProperties fileProperties,
+                                  MeterRegistry meterRegistry) {
         this.fileProperties = fileProperties;
-        this.distributedLock = distributedLock;
-        this.queue = redissonClient.getBlockingDeque(RedisAttribute.EVENT_PREFIX + RedisAttribute.EventType.file_upload_success);
+        this.mediaDashQueue = new JobQueue<>(redissonClient, meterRegistry, MEDIA_DASH_QUEUE,
+                fileProperties.getVideoGenerateTimeout().multipliedBy(2).plus(VISIBILITY_TIMEOUT_BUFFER),
+                MEDIA_DASH_RETRY_BACKOFF, this::generateMediaDash);
+        this.thumbnailQueue = new JobQueue<>(redissonClient, meterRegistry, THUMBNAIL_QUEUE,
+                fileProperties.getThumbnailGenerateTimeout().plus(VISIBILITY_TIMEOUT_BUFFER),
+                THUMBNAIL_RETRY_BACKOFF, this::generateThumbnail);
     }
 
     @PostConstruct
     public void startListening() {
-        if (!RUNNING.compareAndSet(false, true)) {
-            log.warn("File upload success event is already running");
-            return;
+        Integer workers = fileProperties.getMediaJobWorkers();
+        if (workers == null || workers <= 0) {
+            workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
         }
-        log.info("Starting file upload success event listener");
-        EXECUTOR.execute(() -> {
-            while (RUNNING.get()) {
-                try {
-                    FileData file = queue.takeLast();
-                    generateMediaDash(file.getHashValue(), file.getMimeType());
-                } catch (InterruptedException e) {
-                    log.error("File upload success event listener interrupted");
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    log.error("File upload success event listener failed", e);
-                }
-            }
-        });
+        mediaDashQueue.start(workers);
+        thumbnailQueue.start(Math.max(2, Runtime.getRuntime().availableProcessors()));
     }
 
     @PreDestroy
     public void stopListening() {
-        RUNNING.set(false);
-        EXECUTOR.shutdownNow();
-        log.info("Stopping file upload success event listener");
+        mediaDashQueue.stop();
+        thumbnailQueue.stop();
     }
 
-    private void generateMediaDash(String hashValue, String mimeType) {
-        if (Boolean.TRUE.equals(fileProperties.getVideoPlay()) && MediaUtil.isDashSupported(mimeType, fileProperties.getVideoPlayMimeType())) {
-            distributedLock.tryLock(RedisAttribute.LockType.file, RedisAttribute.GENERATE_MEDIA_DASH_PREFIX + hashValue, () -> {
-                try {
-                    log.info("Generating dash file {}", hashValue);
-                    MediaUtil.generateMediaDash(FileUtil.getHashPath(fileProperties.getDir(), hashValue),
-                            FileUtil.getHashPath(fileProperties.getVideoPlayDir(), hashValue).resolve(VideoAttribute.MEDIA_MANIFEST_NAME),
-                            fileProperties.getVideoGenerateTimeout());
-                    log.info("Dash file generated {}", hashValue);
-                } catch (Exception e) {
-                    log.error("Failed to generate dash file {}", hashValue, e);
-                }
-            }, null);
+    public void publish(FileData file) {
+        if (Boolean.TRUE.equals(fileProperties.getVideoPlay())
+                && MediaUtil.isDashSupported(file.getMimeType(), fileProperties.getVideoPlayMimeType())) {
+            mediaDashQueue.submit(file.getHashValue(), file.getUserId(), file);
+        }
+        if (ThumbnailUtil.hasThumbnail(file.getMimeType(), fileProperties.getThumbnailImageMimeType(),
+                fileProperties.getThumbnailVideoMimeType())) {
+            publishThumbnail(file);
+        }
+    }
+
+    /**
+     * queue the thumbnail of a file unless it already failed every attempt
+     *
+     * @param file file
+     * @return whether the thumbnail is pending
+     */
+    public boolean publishThumbnail(FileData file) {
+        if (thumbnailQueue.isDead(file.getHashValue())) {
+            return false;
+        }
+        thumbnailQueue.submit(file.getHashValue(), file.getUserId(), file);
+        return true;
+    }
+
+    public void recover() {
+        mediaDashQueue.recover();
+        thumbnailQueue.recover();
+    }
+
+    private void generateMediaDash(FileData file) throws Exception {
+        String hashValue = file.getHashValue();
+        log.info("Generating dash file {}", hashValue);
+        MediaUtil.generateMediaDash(FileUtil.getHashPath(fileProperties.getDir(), hashValue),
+                FileUtil.getHashPath(fileProperties.getVideoPlayDir(), hashValue).resolve(VideoAttribute.MEDIA_MANIFEST_NAME),
+                fileProperties.getVideoGenerateTimeout(), file.getUserId());
+        log.info("Dash file generated {}", hashValue);
+    }
+
+    private void generateThumbnail(FileData file) throws Exception {
+        String hashValue = file.getHashValue();
+        try {
+            ThumbnailUtil.generateThumbnail(file.getMimeType(),
+                    FileUtil.getHashPath(fileProperties.getDir(), hashValue),
+                    FileUtil.getHashPath(fileProperties.getThumbnailDir(), hashValue, FileAttribute.THUMBNAIL_FILE_SUFFIX),
+                    fileProperties.getThumbnailImageMimeType(), fileProperties.getThumbnailVideoMimeType(),
+                    fileProperties.getThumbnailGenerateTimeout(), file.getUserId());
+        } catch (ThumbnailUtil.FileNotSupportThumbnailException e) {
+            log.warn("File {} does not support thumbnail", hashValue);
         }
     }
 
@@ -4,14 +4,21 @@
 import com.github.filefusion.constant.SorterOrder;
 import com.github.filefusion.file.entity.FileData;
 import com.github.filefusion.file.model.CreateFolderModel;
+import com.github.filefusion.file.model.FileDataListModel;
+import com.github.filefusion.file.model.FileDataScrollModel;
 import com.github.filefusion.file.model.MoveFileModel;
 import com.github.filefusion.file.model.RenameFileModel;
+import com.github.filefusion.file.model.UploadSessionModel;
 import com.github.filefusion.file.service.FileDataService;
 import com.github.filefusion.util.CurrentUser;
 import com.github.filefusion.util.TimeUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.StringUtils;
@@ -19,6 +26,7 @@
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -51,11 +59,11 @@ public FileDataController(FileDataService fileDataService) {
      */
     @GetMapping("/{page}/{pageSize}")
     @PreAuthorize("hasAuthority('personal_file:read')")
-    public Page<FileData> get(@PathVariable Integer page, @PathVariable Integer pageSize,
-                              @RequestParam(required = false) String parentId,
-                              @RequestParam(required = false) String name,
-                              @RequestParam(required = false) String sorter,
-                              @RequestParam(required = false) SorterOrder sorterOrder) {
+    public Page<FileDataListModel> get(@PathVariable Integer page, @PathVariable Integer pageSize,
+                                       @RequestParam(required = false) String parentId,
+                                       @RequestParam(required = false) String name,
+                                       @RequestParam(required = false) String sorter,
+                                       @RequestParam(required = false) SorterOrder sorterOrder) {
         if (!StringUtils.hasLength(sorter)) {
             sorter = FileData.Fields.name;
         }
@@ -66,6 +74,37 @@ public Page<FileData> get(@PathVariable Integer page, @PathVariable Integer page
                 CurrentUser.getId(), parentId, name, false);
     }
 
+    /**
+     * get file list - scrolled by cursor
+     *
+     * @param pageSize    page size
+     * @param cursor      cursor returned by the previous window
+     * @param parentId    parent id
+     * @param name        name
+     * @param sorter      sorter
+     * @param sorterOrder sorter order
+     * @param count       count total
+     * @return file window
+     */
+    @GetMapping("/_scroll/{pageSize}")
+    @PreAuthorize("hasAuthority('personal_file:read')")
+    public FileDataScrollModel scroll(@PathVariable Integer pageSize,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(required = false) String parentId,
+                                      @RequestParam(required = false) String name,
+                                      @RequestParam(required = false) String sorter,
+                                      @RequestParam(required = false) SorterOrder sorterOrder,
+                                      @RequestParam(required = false) Boolean count) {
+        if (!StringUtils.hasLength(sorter)) {
+            sorter = FileData.Fields.name;
+        }
+        if (sorterOrder == null) {
+            sorterOrder = SorterOrder.ascend;
+        }
+        return fileDataService.scroll(CurrentUser.getId(), parentId, name, false,
+                new Sort.Order(sorterOrder.order(), sorter), pageSize, cursor, Boolean.TRUE.equals(count));
+    }
+
     /**
      * get file parent list
      *
@@ -127,6 +166,37 @@ public void uploadChunk(@RequestParam MultipartFile file, @RequestParam Integer
         fileDataService.uploadChunk(file, chunkIndex, chunkHashValue, hashValue);
     }
 
+    /**
+     * upload file chunk - raw body
+     *
+     * @param request        request, the body is the chunk
+     * @param chunkIndex     chunk index
+     * @param chunkHashValue chunk hash value
+     * @param hashValue      hash value
+     * @throws IOException read request body failed
+     */
+    @PostMapping(value = "/_upload_chunk", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasAuthority('personal_file:upload')")
+    public void uploadChunk(HttpServletRequest request,
+                            @RequestHeader("X-Chunk-Index") Integer chunkIndex,
+                            @RequestHeader("X-Chunk-Hash-Value") String chunkHashValue,
+                            @RequestHeader("X-Hash-Value") String hashValue) throws IOException {
+        fileDataService.uploadChunk(request.getInputStream(), request.getContentLengthLong(),
+                chunkIndex, chunkHashValue, hashValue);
+    }
+
+    /**
+     * get upload session, the chunks already received
+     *
+     * @param hashValue hash value
+     * @return upload session
+     */
+    @GetMapping("/_upload_session/{hashValue}")
+    @PreAuthorize("hasAuthority('personal_file:upload')")
+    public UploadSessionModel getUploadSession(@PathVariable String hashValue) {
+        return fileDataService.getUploadSession(hashValue);
+    }
+
     /**
      * upload chunk merge
      *
@@ -201,26 +271,30 @@ public String submitPreviewVideo(@PathVariable String id) {
      * download file list
      *
      * @param downloadId download id
+     * @param compress   deflate compressible files in the zip
+     * @param headers    request headers
      * @return file list
      */
     @GetMapping("/_download/{downloadId}")
-    public ResponseEntity<StreamingResponseBody> download(@PathVariable String downloadId) {
-        return fileDataService.download(downloadId);
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable String downloadId,
+                                                          @RequestParam(defaultValue = "false") Boolean compress,
+                                                          @RequestHeader HttpHeaders headers) {
+        return fileDataService.download(downloadId, compress, headers);
     }
 
     /**
      * download file chunked
      *
      * @param downloadId  download id
-     * @param range       file chunked range
+     * @param headers     request headers
      * @param ignoredName file name
      * @return file chunked
      */
     @GetMapping("/_download_chunked/{downloadId}/{name}")
     public ResponseEntity<StreamingResponseBody> downloadChunked(@PathVariable String downloadId,
-                                                                 @RequestHeader(required = false) String range,
+                                                                 @RequestHeader HttpHeaders headers,
                                                                  @PathVariable("name") String ignoredName) {
-        return fileDataService.downloadChunked(downloadId, range);
+        return fileDataService.downloadChunked(downloadId, headers);
     }
 
     /**
@@ -228,25 +302,38 @@ public ResponseEntity<StreamingResponseBody> downloadChunked(@PathVariable Strin
      *
      * @param downloadId download id
      * @param fileName   file name
-     * @param range      file chunked range
+     * @param headers    request headers
      * @return video chunked
      */
     @GetMapping("/video/{downloadId}/{fileName}")
     public ResponseEntity<StreamingResponseBody> playVideo(@PathVariable String downloadId, @PathVariable String fileName,
-                                                           @RequestHeader(required = false) String range) {
-        return fileDataService.playVideo(downloadId, fileName, range);
+                                                           @RequestHeader HttpHeaders headers) {
+        return fileDataService.playVideo(downloadId, fileName, headers);
     }
 
     /**
-     * thumbnail file
+     * prefetch thumbnail of files
      *
-     * @param id id
+     * @param idList id list
+     */
+    @PostMapping("/_prefetch_thumbnail")
+    @PreAuthorize("hasAuthority('personal_file:read')")
+    public void prefetchThumbnail(@RequestBody List<String> idList) {
+        fileDataService.prefetchThumbnail(CurrentUser.getId(), idList);
+    }
+
+    /**
+     * thumbnail file, accepted while the thumbnail is generated
+     *
+     * @param id      id
+     * @param headers request headers
      * @return file thumbnail
      */
     @GetMapping("/{id}/" + FileAttribute.DOWNLOAD_THUMBNAIL_NAME)
     @PreAuthorize("hasAnyAuthority('personal_file:read','recycle_bin_file:read')")
-    public ResponseEntity<StreamingResponseBody> thumbnail(@PathVariable String id) {
-        return fileDataService.thumbnail(CurrentUser.getId(), id);
+    public ResponseEntity<StreamingResponseBody> thumbnail(@PathVariable String id,
+                                                           @RequestHeader HttpHeaders headers) {
+        return fileDataService.thumbnail(CurrentUser.getId(), id, headers);
     }
 
 }
@@ -3,6 +3,7 @@
 import com.github.filefusion.constant.FileAttribute;
 import com.github.filefusion.constant.SorterOrder;
 import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.model.FileDataListModel;
 import com.github.filefusion.file.model.MoveFileModel;
 import com.github.filefusion.file.service.FileDataService;
 import com.github.filefusion.file.service.RecycleBinService;
@@ -46,10 +47,10 @@ public RecycleBinController(FileDataService fileDataService,
      */
     @GetMapping("/{page}/{pageSize}")
     @PreAuthorize("hasAuthority('recycle_bin_file:read')")
-    public Page<FileData> get(@PathVariable Integer page, @PathVariable Integer pageSize,
-                              @RequestParam(required = false) String name,
-                              @RequestParam(required = false) String sorter,
-                              @RequestParam(required = false) SorterOrder sorterOrder) {
+    public Page<FileDataListModel> get(@PathVariable Integer page, @PathVariable Integer pageSize,
+                                       @RequestParam(required = false) String name,
+                                       @RequestParam(required = false) String sorter,
+                                       @RequestParam(required = false) SorterOrder sorterOrder) {
         if (!StringUtils.hasLength(sorter)) {
             sorter = FileData.Fields.name;
         }
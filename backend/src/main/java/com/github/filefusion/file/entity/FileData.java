@@ -2,7 +2,6 @@
 
 import com.github.filefusion.common.BaseEntity;
 import jakarta.persistence.Entity;
-import jakarta.persistence.Transient;
 import lombok.Data;
 import lombok.experimental.FieldNameConstants;
 
@@ -39,6 +38,11 @@ public class FileData extends BaseEntity {
      */
     private String path;
 
+    /**
+     * tree path, the ids of all ancestors joined by separator, used for subtree queries
+     */
+    private String treePath;
+
     /**
      * hash value
      */
@@ -74,16 +78,4 @@ public class FileData extends BaseEntity {
      */
     private LocalDateTime deletedDate;
 
-    /**
-     * has thumbnail
-     */
-    @Transient
-    private Boolean hasThumbnail;
-
-    /**
-     * can play
-     */
-    @Transient
-    private Boolean canPlay;
-
 }
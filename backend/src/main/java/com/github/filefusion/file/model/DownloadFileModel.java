@@ -0,0 +1,52 @@
+package com.github.filefusion.file.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * DownloadFileModel
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Data
+public class DownloadFileModel implements Serializable {
+
+    /**
+     * id
+     */
+    private String id;
+
+    /**
+     * parent id
+     */
+    private String parentId;
+
+    /**
+     * name
+     */
+    private String name;
+
+    /**
+     * hash value, null for a folder
+     */
+    private String hashValue;
+
+    /**
+     * mime type
+     */
+    private String mimeType;
+
+    /**
+     * size
+     */
+    private long size;
+
+    /**
+     * last modified date
+     */
+    private LocalDateTime lastModifiedDate;
+
+}
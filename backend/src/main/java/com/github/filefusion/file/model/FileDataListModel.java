@@ -0,0 +1,92 @@
+package com.github.filefusion.file.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * FileDataListModel
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Data
+public class FileDataListModel implements Serializable {
+
+    /**
+     * id
+     */
+    private String id;
+
+    /**
+     * parent id
+     */
+    private String parentId;
+
+    /**
+     * name
+     */
+    private String name;
+
+    /**
+     * path
+     */
+    private String path;
+
+    /**
+     * mime type
+     */
+    private String mimeType;
+
+    /**
+     * size
+     */
+    private Long size;
+
+    /**
+     * file last modified date
+     */
+    private LocalDateTime fileLastModifiedDate;
+
+    /**
+     * created date
+     */
+    private LocalDateTime createdDate;
+
+    /**
+     * last modified date
+     */
+    private LocalDateTime lastModifiedDate;
+
+    /**
+     * deleted date
+     */
+    private LocalDateTime deletedDate;
+
+    /**
+     * has thumbnail
+     */
+    private Boolean hasThumbnail;
+
+    /**
+     * can play
+     */
+    private Boolean canPlay;
+
+    public FileDataListModel(String id, String parentId, String name, String path, String mimeType, Long size,
+                             LocalDateTime fileLastModifiedDate, LocalDateTime createdDate,
+                             LocalDateTime lastModifiedDate, LocalDateTime deletedDate) {
+        this.id = id;
+        this.parentId = parentId;
+        this.name = name;
+        this.path = path;
+        this.mimeType = mimeType;
+        this.size = size;
+        this.fileLastModifiedDate = fileLastModifiedDate;
+        this.createdDate = createdDate;
+        this.lastModifiedDate = lastModifiedDate;
+        this.deletedDate = deletedDate;
+    }
+
+}
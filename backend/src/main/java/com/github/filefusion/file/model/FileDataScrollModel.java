@@ -0,0 +1,37 @@
+package com.github.filefusion.file.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * FileDataScrollModel
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Data
+public class FileDataScrollModel implements Serializable {
+
+    /**
+     * content
+     */
+    private List<FileDataListModel> content;
+
+    /**
+     * cursor of the next window, null when there is none
+     */
+    private String cursor;
+
+    /**
+     * has next
+     */
+    private boolean hasNext;
+
+    /**
+     * total, only counted when requested
+     */
+    private Long total;
+
+}
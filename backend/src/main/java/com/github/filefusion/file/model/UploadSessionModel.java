@@ -0,0 +1,32 @@
+package com.github.filefusion.file.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * UploadSessionModel
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Data
+public class UploadSessionModel implements Serializable {
+
+    /**
+     * hash value
+     */
+    private String hashValue;
+
+    /**
+     * chunk size, null before the first chunk is received
+     */
+    private Long chunkSize;
+
+    /**
+     * received chunk index list
+     */
+    private List<Integer> receivedChunkList;
+
+}
@@ -1,10 +1,11 @@
 package com.github.filefusion.file.repository;
 
 import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.model.FileDataListModel;
 import com.github.filefusion.file.model.FileHashUsageCountModel;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.*;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -32,7 +33,33 @@ public interface FileDataRepository extends JpaRepository<FileData, String> {
      * @param page     page
      * @return file list
      */
-    Page<FileData> findAllByUserIdAndParentIdAndNameLikeAndDeleted(String userId, String parentId, String name, boolean deleted, Pageable page);
+    Page<FileDataListModel> findAllByUserIdAndParentIdAndNameLikeAndDeleted(String userId, String parentId, String name, boolean deleted, Pageable page);
+
+    /**
+     * findAllByUserIdAndParentIdAndNameLikeAndDeleted
+     *
+     * @param userId   user id
+     * @param parentId parent id
+     * @param name     name
+     * @param deleted  deleted
+     * @param position scroll position
+     * @param limit    limit
+     * @param sort     sort
+     * @return file window
+     */
+    Window<FileDataListModel> findAllByUserIdAndParentIdAndNameLikeAndDeleted(String userId, String parentId, String name, boolean deleted,
+                                                                              ScrollPosition position, Limit limit, Sort sort);
+
+    /**
+     * countByUserIdAndParentIdAndNameLikeAndDeleted
+     *
+     * @param userId   user id
+     * @param parentId parent id
+     * @param name     name
+     * @param deleted  deleted
+     * @return count
+     */
+    long countByUserIdAndParentIdAndNameLikeAndDeleted(String userId, String parentId, String name, boolean deleted);
 
     /**
      * findAllByUserIdAndParentIdAndMimeTypeAndDeletedFalse
@@ -98,12 +125,139 @@ public interface FileDataRepository extends JpaRepository<FileData, String> {
     boolean existsByUserIdAndIdAndDeletedFalse(String userId, String id);
 
     /**
-     * findAllByParentIdIn
+     * findAllByTreePathStartingWith
      *
-     * @param parentIdList parent id list
+     * @param treePath tree path prefix
      * @return file list
      */
-    List<FileData> findAllByParentIdIn(List<String> parentIdList);
+    List<FileData> findAllByTreePathStartingWith(String treePath);
+
+    /**
+     * countByTreePathStartingWith
+     *
+     * @param treePath tree path prefix
+     * @return count
+     */
+    long countByTreePathStartingWith(String treePath);
+
+    /**
+     * findAllIdByTreePathStartingWith
+     *
+     * @param treePath tree path prefix
+     * @param lastId   last id of the previous page
+     * @param page     page
+     * @return id list
+     */
+    @Query("SELECT f.id FROM file_data f WHERE f.treePath LIKE CONCAT(:treePath, '%') AND f.id > :lastId ORDER BY f.id")
+    List<String> findAllIdByTreePathStartingWith(@Param("treePath") String treePath,
+                                                 @Param("lastId") String lastId,
+                                                 Pageable page);
+
+    /**
+     * recycleByTreePathStartingWith
+     *
+     * @param treePath       tree path prefix
+     * @param treePathLength tree path prefix length
+     * @param targetTreePath target tree path prefix
+     * @param deletedDate    deleted date
+     * @param modifiedBy     last modified by
+     * @return updated count
+     */
+    @Modifying
+    @Query("UPDATE file_data f SET f.treePath = CONCAT(:targetTreePath, SUBSTRING(f.treePath, :treePathLength + 1)), " +
+            "f.deleted = true, f.deletedDate = :deletedDate, f.lastModifiedBy = :modifiedBy, f.lastModifiedDate = :deletedDate " +
+            "WHERE f.treePath LIKE CONCAT(:treePath, '%')")
+    int recycleByTreePathStartingWith(@Param("treePath") String treePath,
+                                      @Param("treePathLength") int treePathLength,
+                                      @Param("targetTreePath") String targetTreePath,
+                                      @Param("deletedDate") LocalDateTime deletedDate,
+                                      @Param("modifiedBy") String modifiedBy);
+
+    /**
+     * moveByTreePathStartingWith
+     *
+     * @param treePath       tree path prefix
+     * @param treePathLength tree path prefix length
+     * @param targetTreePath target tree path prefix
+     * @param pathLength     source path length
+     * @param targetPath     target path
+     * @param modifiedBy     last modified by
+     * @param modifiedDate   last modified date
+     * @return updated count
+     */
+    @Modifying
+    @Query("UPDATE file_data f SET f.treePath = CONCAT(:targetTreePath, SUBSTRING(f.treePath, :treePathLength + 1)), " +
+            "f.path = CONCAT(:targetPath, SUBSTRING(f.path, :pathLength + 1)), f.deleted = false, f.deletedDate = null, " +
+            "f.lastModifiedBy = :modifiedBy, f.lastModifiedDate = :modifiedDate WHERE f.treePath LIKE CONCAT(:treePath, '%')")
+    int moveByTreePathStartingWith(@Param("treePath") String treePath,
+                                   @Param("treePathLength") int treePathLength,
+                                   @Param("targetTreePath") String targetTreePath,
+                                   @Param("pathLength") int pathLength,
+                                   @Param("targetPath") String targetPath,
+                                   @Param("modifiedBy") String modifiedBy,
+                                   @Param("modifiedDate") LocalDateTime modifiedDate);
+
+    /**
+     * moveByIdIn
+     *
+     * @param idList         id list
+     * @param treePathLength tree path prefix length
+     * @param targetTreePath target tree path prefix
+     * @param pathLength     source path length
+     * @param targetPath     target path
+     * @param modifiedBy     last modified by
+     * @param modifiedDate   last modified date
+     * @return updated count
+     */
+    @Modifying
+    @Query("UPDATE file_data f SET f.treePath = CONCAT(:targetTreePath, SUBSTRING(f.treePath, :treePathLength + 1)), " +
+            "f.path = CONCAT(:targetPath, SUBSTRING(f.path, :pathLength + 1)), f.deleted = false, f.deletedDate = null, " +
+            "f.lastModifiedBy = :modifiedBy, f.lastModifiedDate = :modifiedDate WHERE f.id IN :idList")
+    int moveByIdIn(@Param("idList") List<String> idList,
+                   @Param("treePathLength") int treePathLength,
+                   @Param("targetTreePath") String targetTreePath,
+                   @Param("pathLength") int pathLength,
+                   @Param("targetPath") String targetPath,
+                   @Param("modifiedBy") String modifiedBy,
+                   @Param("modifiedDate") LocalDateTime modifiedDate);
+
+    /**
+     * renameByTreePathStartingWith
+     *
+     * @param treePath     tree path prefix
+     * @param pathLength   source path length
+     * @param targetPath   target path
+     * @param modifiedBy   last modified by
+     * @param modifiedDate last modified date
+     * @return updated count
+     */
+    @Modifying
+    @Query("UPDATE file_data f SET f.path = CONCAT(:targetPath, SUBSTRING(f.path, :pathLength + 1)), " +
+            "f.lastModifiedBy = :modifiedBy, f.lastModifiedDate = :modifiedDate WHERE f.treePath LIKE CONCAT(:treePath, '%')")
+    int renameByTreePathStartingWith(@Param("treePath") String treePath,
+                                     @Param("pathLength") int pathLength,
+                                     @Param("targetPath") String targetPath,
+                                     @Param("modifiedBy") String modifiedBy,
+                                     @Param("modifiedDate") LocalDateTime modifiedDate);
+
+    /**
+     * renameByIdIn
+     *
+     * @param idList       id list
+     * @param pathLength   source path length
+     * @param targetPath   target path
+     * @param modifiedBy   last modified by
+     * @param modifiedDate last modified date
+     * @return updated count
+     */
+    @Modifying
+    @Query("UPDATE file_data f SET f.path = CONCAT(:targetPath, SUBSTRING(f.path, :pathLength + 1)), " +
+            "f.lastModifiedBy = :modifiedBy, f.lastModifiedDate = :modifiedDate WHERE f.id IN :idList")
+    int renameByIdIn(@Param("idList") List<String> idList,
+                     @Param("pathLength") int pathLength,
+                     @Param("targetPath") String targetPath,
+                     @Param("modifiedBy") String modifiedBy,
+                     @Param("modifiedDate") LocalDateTime modifiedDate);
 
     /**
      * findAllByUserIdAndPathInAndDeletedFalse
@@ -1,47 +1,66 @@
 package com.github.filefusion.file.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.filefusion.common.BaseEntity;
 import com.github.filefusion.common.FileProperties;
 import com.github.filefusion.common.HttpException;
 import com.github.filefusion.constant.FileAttribute;
 import com.github.filefusion.constant.RedisAttribute;
 import com.github.filefusion.constant.SysConfigKey;
+import com.github.filefusion.event.FileUploadSuccessEvent;
 import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.model.DownloadFileModel;
+import com.github.filefusion.file.model.FileDataListModel;
+import com.github.filefusion.file.model.FileDataScrollModel;
 import com.github.filefusion.file.model.FileHashUsageCountModel;
+import com.github.filefusion.file.model.UploadSessionModel;
 import com.github.filefusion.file.repository.FileDataRepository;
 import com.github.filefusion.sys_config.service.SysConfigService;
+import com.github.filefusion.util.CursorUtil;
 import com.github.filefusion.util.DistributedLock;
 import com.github.filefusion.util.I18n;
 import com.github.filefusion.util.ULID;
+import com.github.filefusion.util.file.DownloadManifest;
 import com.github.filefusion.util.file.DownloadUtil;
 import com.github.filefusion.util.file.FileUtil;
 import com.github.filefusion.util.file.MediaUtil;
 import com.github.filefusion.util.file.ThumbnailUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBlockingDeque;
-import org.redisson.api.RList;
+import org.redisson.api.RMap;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.data.domain.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.CollectionUtils;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.MimeType;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.regex.Pattern;
@@ -58,23 +77,61 @@
 @Service
 public class FileDataService {
 
+    private static final long MOVE_BATCH_THRESHOLD = 50000L;
+    private static final int MOVE_BATCH_SIZE = 5000;
+    private static final String MERGE_EXTENSION = ".merge";
+    private static final int THUMBNAIL_RETRY_AFTER_SECONDS = 1;
+    private static final int MAX_PREFETCH_THUMBNAIL_SIZE = 50;
+    private static final long DOWNLOAD_FILE_LIST_MAXIMUM_WEIGHT = 1_000_000;
+    private static final Duration DOWNLOAD_FILE_LIST_EXPIRATION = Duration.ofMinutes(1);
+    private static final Set<String> SCROLL_SORTERS = Set.of(FileData.Fields.name, FileData.Fields.size,
+            FileData.Fields.fileLastModifiedDate, BaseEntity.Fields.createdDate, BaseEntity.Fields.lastModifiedDate);
+
     private final RedissonClient redissonClient;
     private final DistributedLock distributedLock;
     private final FileProperties fileProperties;
     private final FileDataRepository fileDataRepository;
     private final SysConfigService sysConfigService;
+    private final TransactionTemplate batchTransactionTemplate;
+    private final MultipartProperties multipartProperties;
+    private final UploadSessionService uploadSessionService;
+    private final FileUploadSuccessEvent fileUploadSuccessEvent;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, List<DownloadFileModel>> downloadFileListCache;
 
     @Autowired
     public FileDataService(RedissonClient redissonClient,
                            DistributedLock distributedLock,
                            FileProperties fileProperties,
                            FileDataRepository fileDataRepository,
-                           SysConfigService sysConfigService) {
+                           SysConfigService sysConfigService,
+                           PlatformTransactionManager transactionManager,
+                           MultipartProperties multipartProperties,
+                           UploadSessionService uploadSessionService,
+                           FileUploadSuccessEvent fileUploadSuccessEvent,
+                           MeterRegistry meterRegistry) {
         this.redissonClient = redissonClient;
         this.distributedLock = distributedLock;
         this.fileProperties = fileProperties;
         this.fileDataRepository = fileDataRepository;
         this.sysConfigService = sysConfigService;
+        this.batchTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.multipartProperties = multipartProperties;
+        this.uploadSessionService = uploadSessionService;
+        this.fileUploadSuccessEvent = fileUploadSuccessEvent;
+        this.meterRegistry = meterRegistry;
+        this.downloadFileListCache = Caffeine.newBuilder()
+                .maximumWeight(DOWNLOAD_FILE_LIST_MAXIMUM_WEIGHT)
+                .weigher((String downloadId, List<DownloadFileModel> fileList) -> Math.max(1, fileList.size()))
+                .expireAfterWrite(DOWNLOAD_FILE_LIST_EXPIRATION)
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void initDownloadFileListCache() {
+        CaffeineCacheMetrics.monitor(meterRegistry, downloadFileListCache, "download_file_lists");
     }
 
     private static void hashFormatCheck(String hash) {
@@ -86,6 +143,12 @@ private static void hashFormatCheck(String hash) {
         }
     }
 
+    private static void chunkIndexCheck(Integer chunkIndex) {
+        if (chunkIndex == null || chunkIndex < 0 || chunkIndex >= FileAttribute.MAX_CHUNK_COUNT) {
+            throw new HttpException(I18n.get("fileChunkIndexError"));
+        }
+    }
+
     private static void nameFormatCheck(String name) {
         if (!StringUtils.hasLength(name)) {
             throw new HttpException(I18n.get("fileNameEmpty"));
@@ -109,37 +172,40 @@ private static void pathFormatCheck(String path) {
         }
     }
 
-    public List<FileData> findAllChildren(String id) {
-        List<FileData> children = new ArrayList<>();
-        Queue<String> queue = new ArrayDeque<>();
-        queue.add(id);
-        while (!queue.isEmpty()) {
-            int levelSize = queue.size();
-            List<String> currentLevelParentIds = new ArrayList<>(levelSize);
-            for (int i = 0; i < levelSize; i++) {
-                currentLevelParentIds.add(queue.poll());
-            }
-            List<FileData> currentChildren = fileDataRepository.findAllByParentIdIn(currentLevelParentIds);
-            children.addAll(currentChildren);
-            currentChildren.stream()
-                    .filter(child -> FileAttribute.MimeType.FOLDER.value().toString().equals(child.getMimeType()))
-                    .forEach(child -> queue.add(child.getId()));
+    private static String uploadChunkKey(String hashValue) {
+        return RedisAttribute.UPLOAD_CHUNK_PREFIX + hashValue;
+    }
+
+    private static void requireLock(DistributedLock.LockResult lockResult) {
+        if (lockResult != DistributedLock.LockResult.acquired) {
+            throw new HttpException(HttpStatus.CONFLICT, I18n.get("fileLocked"));
         }
-        return children;
     }
 
-    public Page<FileData> get(PageRequest page, String userId, String parentId, String name, boolean deleted) {
-        if (!StringUtils.hasLength(parentId)) {
-            parentId = FileAttribute.PARENT_ROOT;
+    private static String childrenTreePath(FileData parent) {
+        if (parent == null) {
+            return FileAttribute.SEPARATOR;
         }
-        if (StringUtils.hasLength(name)) {
-            name = "%" + name + "%";
-        } else {
-            name = "%";
+        return parent.getTreePath() + parent.getId() + FileAttribute.SEPARATOR;
+    }
+
+    public List<FileData> findAllChildren(FileData file) {
+        if (!FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
+            return new ArrayList<>();
         }
-        Page<FileData> fileDataPage = fileDataRepository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
-                userId, parentId, name, deleted, page);
-        fileDataPage.getContent().forEach(fileData -> {
+        return new ArrayList<>(fileDataRepository.findAllByTreePathStartingWith(childrenTreePath(file)));
+    }
+
+    private static String listParentId(String parentId) {
+        return StringUtils.hasLength(parentId) ? parentId : FileAttribute.PARENT_ROOT;
+    }
+
+    private static String listNameLike(String name) {
+        return StringUtils.hasLength(name) ? "%" + name + "%" : "%";
+    }
+
+    private void setMediaAttribute(List<FileDataListModel> fileDataList) {
+        fileDataList.forEach(fileData -> {
                     fileData.setHasThumbnail(ThumbnailUtil.hasThumbnail(fileData.getMimeType(),
                             fileProperties.getThumbnailImageMimeType(),
                             fileProperties.getThumbnailVideoMimeType())
@@ -149,9 +215,46 @@ public Page<FileData> get(PageRequest page, String userId, String parentId, Stri
                     );
                 }
         );
+    }
+
+    public Page<FileDataListModel> get(PageRequest page, String userId, String parentId, String name, boolean deleted) {
+        Page<FileDataListModel> fileDataPage = fileDataRepository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                userId, listParentId(parentId), listNameLike(name), deleted, page);
+        setMediaAttribute(fileDataPage.getContent());
         return fileDataPage;
     }
 
+    public FileDataScrollModel scroll(String userId, String parentId, String name, boolean deleted,
+                                      Sort.Order order, int pageSize, String cursor, boolean count) {
+        if (pageSize < 1 || pageSize > FileAttribute.MAX_SCROLL_PAGE_SIZE) {
+            throw new HttpException(I18n.get("pageSizeError"));
+        }
+        if (!SCROLL_SORTERS.contains(order.getProperty())) {
+            throw new HttpException(I18n.get("sorterNotSupported"));
+        }
+        KeysetScrollPosition position = CursorUtil.decode(cursor, FileData.class);
+        if (!position.isInitial() && !position.getKeys().keySet()
+                .equals(Set.of(order.getProperty(), BaseEntity.Fields.id))) {
+            throw new HttpException(I18n.get("invalidCursor"));
+        }
+        parentId = listParentId(parentId);
+        name = listNameLike(name);
+        Window<FileDataListModel> window = fileDataRepository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                userId, parentId, name, deleted, position, Limit.of(pageSize), Sort.by(order));
+        setMediaAttribute(window.getContent());
+        FileDataScrollModel scrollModel = new FileDataScrollModel();
+        scrollModel.setContent(window.getContent());
+        scrollModel.setHasNext(window.hasNext());
+        if (window.hasNext()) {
+            scrollModel.setCursor(CursorUtil.encode((KeysetScrollPosition) window.positionAt(window.size() - 1)));
+        }
+        if (count) {
+            scrollModel.setTotal(fileDataRepository.countByUserIdAndParentIdAndNameLikeAndDeleted(
+                    userId, parentId, name, deleted));
+        }
+        return scrollModel;
+    }
+
     public List<FileData> getAllParent(String userId, String id) {
         FileData fileData = fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, id)
                 .orElseThrow(() -> new HttpException(I18n.get("fileNotExist")));
@@ -175,62 +278,59 @@ public void recycleOrDelete(String userId, String id, boolean recycle) {
             file = fileDataRepository.findFirstByUserIdAndIdAndDeletedTrue(userId, id)
                     .orElseThrow(() -> new HttpException(I18n.get("fileNotExist")));
         }
-        List<FileData> childrenList = findAllChildren(file.getId());
         if (recycle && Boolean.parseBoolean(sysConfigService.get(SysConfigKey.RECYCLE_BIN).getConfigValue())) {
-            batchRecycle(file, childrenList);
+            batchRecycle(file);
         } else {
+            List<FileData> childrenList = findAllChildren(file);
             childrenList.addFirst(file);
             batchDelete(childrenList);
         }
     }
 
-    private void batchRecycle(FileData file, List<FileData> childrenList) {
-        List<String> lockKeyList = new ArrayList<>(List.of(
-                file.getUserId() + RedisAttribute.SEPARATOR + file.getPath()
-        ));
-        childrenList.stream()
-                .map(child -> child.getUserId() + RedisAttribute.SEPARATOR + child.getPath())
-                .forEach(lockKeyList::add);
-
-        distributedLock.tryMultiLock(RedisAttribute.LockType.file, lockKeyList, () -> {
+    private void batchRecycle(FileData file) {
+        String childrenTreePath = childrenTreePath(file);
+        String pathKey = file.getUserId() + RedisAttribute.SEPARATOR + file.getPath();
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file, List.of(pathKey), null, () -> {
             LocalDateTime deletedDate = LocalDateTime.now();
             file.setParentId(FileAttribute.RECYCLE_BIN_ROOT);
-            List<FileData> allFiles = Stream.concat(Stream.of(file), childrenList.stream()).peek(f -> {
-                f.setDeleted(true);
-                f.setDeletedDate(deletedDate);
-            }).toList();
-            fileDataRepository.saveAll(allFiles);
-        }, fileProperties.getLockTimeout());
+            file.setTreePath(childrenTreePath(null));
+            file.setDeleted(true);
+            file.setDeletedDate(deletedDate);
+            fileDataRepository.save(file);
+            fileDataRepository.recycleByTreePathStartingWith(childrenTreePath, childrenTreePath.length(),
+                    childrenTreePath(file), deletedDate, file.getUserId());
+        }, fileProperties.getLockTimeout()));
     }
 
     public void batchDelete(List<FileData> fileList) {
-        List<String> lockKeyList = new ArrayList<>(fileList.size() * 2);
-        fileList.forEach(child -> {
-            lockKeyList.add(child.getHashValue());
-            lockKeyList.add(child.getUserId() + RedisAttribute.SEPARATOR + child.getPath());
-        });
+        List<String> pathKeyList = fileList.stream()
+                .map(child -> child.getUserId() + RedisAttribute.SEPARATOR + child.getPath()).toList();
+        List<String> hashKeyList = fileList.stream().map(FileData::getHashValue)
+                .filter(StringUtils::hasLength).distinct().toList();
 
-        distributedLock.tryMultiLock(RedisAttribute.LockType.file, lockKeyList, () -> {
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file, pathKeyList, hashKeyList, () -> {
             fileDataRepository.deleteAllInBatch(fileList);
-            List<String> hashList = fileList.stream().map(FileData::getHashValue)
-                    .filter(StringUtils::hasLength).distinct().toList();
-            if (hashList.isEmpty()) {
+            if (hashKeyList.isEmpty()) {
                 return;
             }
-            Map<String, Long> hashCounts = fileDataRepository.countByHashValueList(hashList)
+            Map<String, Long> hashCounts = fileDataRepository.countByHashValueList(hashKeyList)
                     .stream().collect(Collectors.toMap(
                             FileHashUsageCountModel::getHashValue,
                             FileHashUsageCountModel::getCount
                     ));
-            List<Path> deletePaths = hashList.stream()
-                    .filter(hash -> hashCounts.getOrDefault(hash, 0L) == 0)
+            List<String> deleteHashList = hashKeyList.stream()
+                    .filter(hash -> hashCounts.getOrDefault(hash, 0L) == 0).toList();
+            List<Path> deletePaths = deleteHashList.stream()
                     .map(hash -> FileUtil.getHashPath(fileProperties.getDir(), hash)).toList();
+            if (!deleteHashList.isEmpty()) {
+                redissonClient.getMap(RedisAttribute.FILE_CRC32).fastRemove(deleteHashList.toArray());
+            }
             try {
                 FileUtil.delete(deletePaths);
             } catch (FileUtil.FileDeletionFailedException e) {
                 throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileDeleteFailed"));
             }
-        }, fileProperties.getLockTimeout());
+        }, fileProperties.getLockTimeout()));
     }
 
     public List<FileData> getFolderList(String userId, String parentId) {
@@ -251,14 +351,14 @@ public void createFolder(String userId, String parentId, String name) {
     }
 
     private FileData createHierarchicalFolders(String userId, String parentId, String folder, LocalDateTime lastModifiedDate) {
-        AtomicReference<String> currentParentId = new AtomicReference<>(parentId);
+        AtomicReference<FileData> currentParent = new AtomicReference<>();
         StringBuilder parentPath;
         if (FileAttribute.PARENT_ROOT.equals(parentId)) {
             parentPath = new StringBuilder();
         } else {
-            parentPath = new StringBuilder(fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, parentId)
-                    .map(FileData::getPath)
+            currentParent.set(fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, parentId)
                     .orElseThrow(() -> new HttpException(I18n.get("fileNotExist"))));
+            parentPath = new StringBuilder(currentParent.get().getPath());
         }
 
         String[] pathSegments = folder.split(Pattern.quote(FileAttribute.SEPARATOR));
@@ -274,9 +374,19 @@ private FileData createHierarchicalFolders(String userId, String parentId, Strin
             pathList.add(parentPath.toString());
         }
 
+        if (pathList.isEmpty()) {
+            return currentParent.get();
+        }
+        Map<String, FileData> existsFolderMap = fileDataRepository.findAllByUserIdAndPathInAndDeletedFalse(userId, pathList)
+                .stream().collect(Collectors.toMap(FileData::getPath, Function.identity()));
+        String firstMissingPath = pathList.stream().filter(path -> !existsFolderMap.containsKey(path)).findFirst().orElse(null);
+        if (firstMissingPath == null) {
+            return existsFolderMap.get(pathList.getLast());
+        }
+
         AtomicReference<FileData> lastCreatedFile = new AtomicReference<>();
-        distributedLock.tryMultiLock(RedisAttribute.LockType.file,
-                pathList.stream().map(rp -> userId + RedisAttribute.SEPARATOR + rp).toList(), () -> {
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(userId + RedisAttribute.SEPARATOR + firstMissingPath), null, () -> {
                     Map<String, FileData> existsFileMap = fileDataRepository.findAllByUserIdAndPathInAndDeletedFalse(userId, pathList)
                             .stream().collect(Collectors.toMap(FileData::getPath, Function.identity()));
                     for (String path : pathList) {
@@ -284,9 +394,10 @@ private FileData createHierarchicalFolders(String userId, String parentId, Strin
                         if (file == null) {
                             file = new FileData();
                             file.setUserId(userId);
-                            file.setParentId(currentParentId.get());
+                            file.setParentId(currentParent.get() == null ? parentId : currentParent.get().getId());
                             file.setName(Paths.get(path).getFileName().toString());
                             file.setPath(path);
+                            file.setTreePath(childrenTreePath(currentParent.get()));
                             file.setMimeType(FileAttribute.MimeType.FOLDER.value().toString());
                             file.setSize(0L);
                             file.setEncrypted(false);
@@ -294,10 +405,10 @@ private FileData createHierarchicalFolders(String userId, String parentId, Strin
                             file.setDeleted(false);
                             fileDataRepository.save(file);
                         }
-                        currentParentId.set(file.getId());
+                        currentParent.set(file);
                         lastCreatedFile.set(file);
                     }
-                }, fileProperties.getLockTimeout());
+                }, fileProperties.getLockTimeout()));
         return lastCreatedFile.get();
     }
 
@@ -307,27 +418,26 @@ public boolean uploadChunkMerge(String userId, String parentId, String parentPat
         hashFormatCheck(hashValue);
         parentId = StringUtils.hasLength(parentId) ? parentId : FileAttribute.PARENT_ROOT;
         LocalDateTime lastModifiedDate = lastModified == null ? LocalDateTime.now() : lastModified;
-        String pId;
-        String path;
+        FileData parentFile;
         if (StringUtils.hasLength(parentPath)) {
             pathFormatCheck(parentPath);
-            FileData parentFile = createHierarchicalFolders(userId, parentId, parentPath, lastModifiedDate);
-            pId = parentFile.getId();
-            path = parentFile.getPath() + FileAttribute.SEPARATOR + name;
+            parentFile = createHierarchicalFolders(userId, parentId, parentPath, lastModifiedDate);
+        } else if (FileAttribute.PARENT_ROOT.equals(parentId)) {
+            parentFile = null;
         } else {
-            if (!FileAttribute.PARENT_ROOT.equals(parentId) && !fileDataRepository.existsByUserIdAndIdAndDeletedFalse(userId, parentId)) {
-                throw new HttpException(I18n.get("fileNotExist"));
-            }
-            pId = parentId;
-            path = name;
+            parentFile = fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, parentId)
+                    .orElseThrow(() -> new HttpException(I18n.get("fileNotExist")));
         }
+        String pId = parentFile == null ? FileAttribute.PARENT_ROOT : parentFile.getId();
+        String path = parentFile == null ? name : parentFile.getPath() + FileAttribute.SEPARATOR + name;
         AtomicBoolean uploadStatus = new AtomicBoolean(false);
-        distributedLock.tryMultiLock(RedisAttribute.LockType.file, List.of(hashValue, userId + RedisAttribute.SEPARATOR + path), () -> {
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(userId + RedisAttribute.SEPARATOR + path, uploadChunkKey(hashValue)), List.of(hashValue), () -> {
             if (fileDataRepository.existsByUserIdAndParentIdAndNameAndDeletedFalse(userId, pId, name)) {
                 throw new HttpException(I18n.get("fileExits", name));
             }
             try {
-                uploadStatus.set(chunkMerge(hashValue, fastUpload));
+                uploadStatus.set(chunkMerge(hashValue, size, fastUpload));
             } catch (IOException e) {
                 throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileUploadFailed"));
             }
@@ -337,6 +447,7 @@ public boolean uploadChunkMerge(String userId, String parentId, String parentPat
                 file.setParentId(pId);
                 file.setName(name);
                 file.setPath(path);
+                file.setTreePath(childrenTreePath(parentFile));
                 file.setHashValue(hashValue);
                 file.setMimeType(mimeType);
                 file.setSize(size);
@@ -345,31 +456,40 @@ public boolean uploadChunkMerge(String userId, String parentId, String parentPat
                 file.setDeleted(false);
                 fileDataRepository.save(file);
 
-                RBlockingDeque<FileData> queue = redissonClient.getBlockingDeque(RedisAttribute.EVENT_PREFIX + RedisAttribute.EventType.file_upload_success);
-                queue.offerFirst(file);
+                fileUploadSuccessEvent.publish(file);
             }
-        }, fileProperties.getLockTimeout());
+        }, fileProperties.getLockTimeout()));
         return uploadStatus.get();
     }
 
-    private boolean chunkMerge(String hashValue, boolean fastUpload) throws IOException {
+    private boolean chunkMerge(String hashValue, long size, boolean fastUpload) throws IOException {
         Path chunkDirPath = FileUtil.getHashPath(fileProperties.getUploadDir(), hashValue);
         Path filePath = FileUtil.getHashPath(fileProperties.getDir(), hashValue);
-        if (hashValue.equals(FileUtil.calculateHash(filePath))) {
+        if (Files.isRegularFile(filePath)) {
             return true;
         }
         if (fastUpload) {
             return false;
         }
+        long chunkCount = uploadSessionService.completeChunkCount(hashValue, size);
+        if (chunkCount < 0 && uploadSessionService.exists(hashValue)) {
+            throw new HttpException(I18n.get("fileChunkIncomplete"));
+        }
+        Path mergePath = filePath.resolveSibling(filePath.getFileName() + MERGE_EXTENSION);
+        String mergedHashValue;
         try {
-            FileUtil.chunkMerge(chunkDirPath, filePath);
+            mergedHashValue = chunkCount < 0 ? FileUtil.chunkMerge(chunkDirPath, mergePath)
+                    : FileUtil.chunkMerge(chunkDirPath, (int) chunkCount, mergePath);
         } catch (IOException e) {
+            log.error("Error merging chunk", e);
             return false;
         }
-        if (hashValue.equals(FileUtil.calculateHash(filePath))) {
+        uploadSessionService.remove(hashValue);
+        if (hashValue.equals(mergedHashValue)) {
+            Files.move(mergePath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
             return true;
         } else {
-            FileUtil.delete(filePath);
+            FileUtil.delete(mergePath);
         }
         return false;
     }
@@ -377,33 +497,69 @@ private boolean chunkMerge(String hashValue, boolean fastUpload) throws IOExcept
     public void uploadChunk(MultipartFile file, Integer chunkIndex, String chunkHashValue, String hashValue) {
         hashFormatCheck(chunkHashValue);
         hashFormatCheck(hashValue);
+        chunkIndexCheck(chunkIndex);
         Path chunkDirPath = FileUtil.getHashPath(fileProperties.getUploadDir(), hashValue);
         Path chunkPath = chunkDirPath.resolve(String.valueOf(chunkIndex));
-        distributedLock.tryLock(RedisAttribute.LockType.file, hashValue + RedisAttribute.SEPARATOR + chunkIndex, () -> {
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(uploadChunkKey(hashValue) + FileAttribute.SEPARATOR + chunkIndex), null, () -> {
             try {
                 if (Files.exists(chunkPath)) {
-                    if (chunkHashValue.equals(FileUtil.calculateHash(chunkPath))) {
+                    if (chunkHashValue.equals(FileUtil.calculateChunkHash(chunkPath, chunkIndex))) {
+                        uploadSessionService.chunkReceived(hashValue, chunkIndex, file.getSize());
                         return;
                     } else {
-                        FileUtil.delete(chunkPath);
+                        FileUtil.delete(List.of(chunkPath, FileUtil.getChunkTreePath(chunkPath)));
                     }
                 }
                 Files.createDirectories(chunkPath.getParent());
                 try {
                     file.transferTo(chunkPath);
-                    if (!chunkHashValue.equals(FileUtil.calculateHash(chunkPath))) {
+                    if (!chunkHashValue.equals(FileUtil.calculateChunkHash(chunkPath, chunkIndex))) {
                         log.error("Error uploading chunk");
                         throw new IOException();
                     }
                 } catch (IOException e) {
                     log.error("Error uploading chunk", e);
-                    FileUtil.delete(chunkPath);
+                    FileUtil.delete(List.of(chunkPath, FileUtil.getChunkTreePath(chunkPath)));
                     throw new IOException(e);
                 }
+                uploadSessionService.chunkReceived(hashValue, chunkIndex, file.getSize());
+            } catch (IOException e) {
+                throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileUploadFailed"));
+            }
+        }, fileProperties.getLockTimeout()));
+    }
+
+    public void uploadChunk(InputStream in, long size, Integer chunkIndex, String chunkHashValue, String hashValue) {
+        hashFormatCheck(chunkHashValue);
+        hashFormatCheck(hashValue);
+        chunkIndexCheck(chunkIndex);
+        long maxSize = multipartProperties.getMaxFileSize().toBytes();
+        if (size > maxSize) {
+            throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE, I18n.get("fileChunkTooLarge"));
+        }
+        Path chunkDirPath = FileUtil.getHashPath(fileProperties.getUploadDir(), hashValue);
+        Path chunkPath = chunkDirPath.resolve(String.valueOf(chunkIndex));
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(uploadChunkKey(hashValue) + FileAttribute.SEPARATOR + chunkIndex), null, () -> {
+            try {
+                if (!FileUtil.writeChunk(in, size, maxSize, chunkPath, chunkIndex, chunkHashValue)) {
+                    log.error("Error uploading chunk");
+                    throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileUploadFailed"));
+                }
+                uploadSessionService.chunkReceived(hashValue, chunkIndex, Files.size(chunkPath));
+            } catch (FileUtil.ChunkTooLargeException e) {
+                throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE, I18n.get("fileChunkTooLarge"));
             } catch (IOException e) {
+                log.error("Error uploading chunk", e);
                 throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileUploadFailed"));
             }
-        }, fileProperties.getLockTimeout());
+        }, fileProperties.getLockTimeout()));
+    }
+
+    public UploadSessionModel getUploadSession(String hashValue) {
+        hashFormatCheck(hashValue);
+        return uploadSessionService.get(hashValue);
     }
 
     @Transactional(rollbackFor = HttpException.class)
@@ -413,7 +569,7 @@ public void rename(String userId, String id, String name) {
     }
 
     @Transactional(rollbackFor = HttpException.class)
-    public void move(String userId, String sourceId, String targetId, String name) {
+    public long move(String userId, String sourceId, String targetId, String name) {
         if (sourceId.equals(targetId)) {
             throw new HttpException(I18n.get("fileCannotMoveItself"));
         }
@@ -425,31 +581,73 @@ public void move(String userId, String sourceId, String targetId, String name) {
         if (!StringUtils.hasLength(name)) {
             name = sourceFile.getName();
         }
-        if (fileDataRepository.existsByUserIdAndParentIdAndNameAndDeletedFalse(userId, targetId, name)) {
-            throw new HttpException(I18n.get("fileExits", sourceFile.getName()));
-        }
         String sourcePath = sourceFile.getPath();
         String targetPath;
+        FileData targetFile;
         if (FileAttribute.PARENT_ROOT.equals(targetId)) {
+            targetFile = null;
             targetPath = name;
         } else {
-            FileData targetFile = fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, targetId)
+            targetFile = fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse(userId, targetId)
                     .orElseThrow(() -> new HttpException(I18n.get("fileNotExist")));
+            if (childrenTreePath(targetFile).startsWith(childrenTreePath(sourceFile))) {
+                throw new HttpException(I18n.get("fileCannotMoveItself"));
+            }
             targetPath = Paths.get(targetFile.getPath()).resolve(name).toString();
         }
-        List<FileData> childrenList = findAllChildren(sourceFile.getId());
-        for (FileData children : childrenList) {
-            children.setPath(targetPath + children.getPath().substring(sourcePath.length()));
-            children.setDeleted(false);
-            children.setDeletedDate(null);
-        }
-        sourceFile.setParentId(targetId);
-        sourceFile.setName(name);
-        sourceFile.setPath(targetPath);
-        sourceFile.setDeleted(false);
-        sourceFile.setDeletedDate(null);
-        childrenList.add(sourceFile);
-        fileDataRepository.saveAll(childrenList);
+        String sourceTreePath = childrenTreePath(sourceFile);
+        String targetTreePath = childrenTreePath(targetFile) + sourceFile.getId() + FileAttribute.SEPARATOR;
+        String targetParentId = targetId;
+        String targetName = name;
+        AtomicLong count = new AtomicLong();
+        requireLock(distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(userId + RedisAttribute.SEPARATOR + sourcePath, userId + RedisAttribute.SEPARATOR + targetPath), null, () -> {
+            if (fileDataRepository.existsByUserIdAndParentIdAndNameAndDeletedFalse(userId, targetParentId, targetName)) {
+                throw new HttpException(I18n.get("fileExits", sourceFile.getName()));
+            }
+            count.set(moveChildren(userId, sourceTreePath, targetTreePath, sourcePath, targetPath));
+            sourceFile.setParentId(targetParentId);
+            sourceFile.setName(targetName);
+            sourceFile.setPath(targetPath);
+            sourceFile.setTreePath(childrenTreePath(targetFile));
+            sourceFile.setDeleted(false);
+            sourceFile.setDeletedDate(null);
+            fileDataRepository.saveAndFlush(sourceFile);
+        }, fileProperties.getLockTimeout()));
+        return count.get() + 1;
+    }
+
+    private long moveChildren(String userId, String sourceTreePath, String targetTreePath,
+                              String sourcePath, String targetPath) {
+        LocalDateTime modifiedDate = LocalDateTime.now();
+        boolean rename = sourceTreePath.equals(targetTreePath);
+        if (fileDataRepository.countByTreePathStartingWith(sourceTreePath) <= MOVE_BATCH_THRESHOLD) {
+            if (rename) {
+                return fileDataRepository.renameByTreePathStartingWith(sourceTreePath,
+                        sourcePath.length(), targetPath, userId, modifiedDate);
+            }
+            return fileDataRepository.moveByTreePathStartingWith(sourceTreePath, sourceTreePath.length(), targetTreePath,
+                    sourcePath.length(), targetPath, userId, modifiedDate);
+        }
+        AtomicReference<String> lastId = new AtomicReference<>("");
+        AtomicLong count = new AtomicLong();
+        Integer batchSize;
+        do {
+            batchSize = batchTransactionTemplate.execute(status -> {
+                List<String> idList = fileDataRepository.findAllIdByTreePathStartingWith(sourceTreePath,
+                        lastId.get(), PageRequest.of(0, MOVE_BATCH_SIZE));
+                if (idList.isEmpty()) {
+                    return 0;
+                }
+                lastId.set(idList.getLast());
+                count.addAndGet(rename
+                        ? fileDataRepository.renameByIdIn(idList, sourcePath.length(), targetPath, userId, modifiedDate)
+                        : fileDataRepository.moveByIdIn(idList, sourceTreePath.length(), targetTreePath,
+                        sourcePath.length(), targetPath, userId, modifiedDate));
+                return idList.size();
+            });
+        } while (batchSize != null && batchSize == MOVE_BATCH_SIZE);
+        return count.get();
     }
 
     public String submitDownload(String userId, List<String> idList) {
@@ -458,15 +656,50 @@ public String submitDownload(String userId, List<String> idList) {
             throw new HttpException(I18n.get("fileNotExist"));
         }
         fileList = fileList.stream()
-                .flatMap(file -> Stream.concat(Stream.of(file), findAllChildren(file.getId()).stream()))
+                .flatMap(file -> Stream.concat(Stream.of(file), findAllChildren(file).stream()))
                 .toList();
+        byte[] manifest;
+        try {
+            manifest = DownloadManifest.encode(fileList.stream().map(this::toDownloadFile).toList());
+        } catch (IOException e) {
+            throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileDownloadFailed"));
+        }
         String downloadId = ULID.randomULID();
-        RList<FileData> downloadFileList = redissonClient.getList(RedisAttribute.DOWNLOAD_ID_PREFIX + downloadId);
-        downloadFileList.addAll(fileList);
-        downloadFileList.expire(fileProperties.getDownloadLinkTimeout());
+        redissonClient.<byte[]>getBucket(RedisAttribute.DOWNLOAD_MANIFEST_PREFIX + downloadId, ByteArrayCodec.INSTANCE)
+                .set(manifest, fileProperties.getDownloadLinkTimeout());
         return downloadId;
     }
 
+    private DownloadFileModel toDownloadFile(FileData file) {
+        DownloadFileModel downloadFile = new DownloadFileModel();
+        downloadFile.setId(file.getId());
+        downloadFile.setParentId(file.getParentId());
+        downloadFile.setName(file.getName());
+        downloadFile.setHashValue(file.getHashValue());
+        downloadFile.setMimeType(file.getMimeType());
+        downloadFile.setSize(file.getSize() == null ? 0 : file.getSize());
+        downloadFile.setLastModifiedDate(file.getFileLastModifiedDate() != null ? file.getFileLastModifiedDate()
+                : file.getLastModifiedDate() != null ? file.getLastModifiedDate() : file.getCreatedDate());
+        return downloadFile;
+    }
+
+    private List<DownloadFileModel> getDownloadFileList(String downloadId, String expiredMessageKey) {
+        return downloadFileListCache.get(downloadId, id -> loadDownloadFileList(id, expiredMessageKey));
+    }
+
+    private List<DownloadFileModel> loadDownloadFileList(String downloadId, String expiredMessageKey) {
+        byte[] manifest = redissonClient.<byte[]>getBucket(RedisAttribute.DOWNLOAD_MANIFEST_PREFIX + downloadId,
+                ByteArrayCodec.INSTANCE).get();
+        if (manifest == null) {
+            throw new HttpException(I18n.get(expiredMessageKey));
+        }
+        try {
+            return Collections.unmodifiableList(DownloadManifest.decode(manifest));
+        } catch (IOException e) {
+            throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileDownloadFailed"));
+        }
+    }
+
     public String submitPreviewVideo(String userId, String id) {
         if (Boolean.FALSE.equals(fileProperties.getVideoPlay())) {
             throw new HttpException(I18n.get("videoPlayNotEnabled"));
@@ -495,61 +728,40 @@ public String submitPreviewVideo(String userId, String id) {
         throw new HttpException(I18n.get("videoGeneratedFailed"));
     }
 
-    public ResponseEntity<StreamingResponseBody> download(String downloadId) {
-        RList<FileData> fileList = redissonClient.getList(RedisAttribute.DOWNLOAD_ID_PREFIX + downloadId);
-        if (CollectionUtils.isEmpty(fileList)) {
-            throw new HttpException(I18n.get("downloadLinkExpired"));
-        }
-        FileData file = fileList.getFirst();
+    public ResponseEntity<StreamingResponseBody> download(String downloadId, boolean compress, HttpHeaders requestHeaders) {
+        List<DownloadFileModel> fileList = getDownloadFileList(downloadId, "downloadLinkExpired");
+        DownloadFileModel file = fileList.getFirst();
         if (fileList.size() == 1 && !FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
-            return DownloadUtil.download(file.getName(), file.getMimeType(),
-                    FileUtil.getHashPath(fileProperties.getDir(), file.getHashValue()));
-        }
-        return DownloadUtil.downloadZip(fileProperties.getDir(), fileList);
+            return download(FileUtil.getHashPath(fileProperties.getDir(), file.getHashValue()),
+                    file.getName(), file.getMimeType(), file.getHashValue(), requestHeaders);
+        }
+        RMap<String, Long> crcMap = redissonClient.getMap(RedisAttribute.FILE_CRC32);
+        Map<String, Long> crcCache = crcMap.getAll(fileList.stream().map(DownloadFileModel::getHashValue)
+                .filter(StringUtils::hasLength).collect(Collectors.toSet()));
+        return DownloadUtil.downloadZip(fileProperties.getDir(), fileList, compress, downloadId, requestHeaders,
+                crcCache, crcMap::fastPutAsync);
     }
 
-    public ResponseEntity<StreamingResponseBody> downloadChunked(String downloadId, String range) {
-        RList<FileData> fileList = redissonClient.getList(RedisAttribute.DOWNLOAD_ID_PREFIX + downloadId);
-        if (CollectionUtils.isEmpty(fileList)) {
-            throw new HttpException(I18n.get("downloadLinkExpired"));
-        }
-        FileData file = fileList.getFirst();
+    public ResponseEntity<StreamingResponseBody> downloadChunked(String downloadId, HttpHeaders requestHeaders) {
+        List<DownloadFileModel> fileList = getDownloadFileList(downloadId, "downloadLinkExpired");
+        DownloadFileModel file = fileList.getFirst();
         if (fileList.size() != 1 || FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
             throw new HttpException(I18n.get("SegmentedDownloadOnlySupportSingle"));
         }
-        return downloadChunked(FileUtil.getHashPath(fileProperties.getDir(), file.getHashValue()),
-                file.getName(), file.getMimeType(), range);
+        return download(FileUtil.getHashPath(fileProperties.getDir(), file.getHashValue()),
+                file.getName(), file.getMimeType(), file.getHashValue(), requestHeaders);
     }
 
-    private ResponseEntity<StreamingResponseBody> downloadChunked(Path path, String name, String mimeType, String range) {
-        String[] ranges;
-        if (StringUtils.hasLength(range)) {
-            ranges = range.replace("bytes=", "").split("-");
-        } else {
-            ranges = new String[]{};
-        }
-        long start = 0L;
-        long end = Long.MAX_VALUE;
-        if (ranges.length > 0) {
-            start = Long.parseLong(ranges[0]);
-        }
-        if (ranges.length > 1) {
-            end = Long.parseLong(ranges[1]);
-        }
+    private ResponseEntity<StreamingResponseBody> download(Path path, String name, String mimeType,
+                                                           String eTag, HttpHeaders requestHeaders) {
         try {
-            long size = Files.size(path);
-            start = Math.max(start, 0);
-            end = Math.min(end, size - 1);
-            if (start > end) {
-                throw new HttpException(I18n.get("fileDownloadFailed"));
-            }
-            return DownloadUtil.downloadChunked(name, mimeType, path, start, end, size);
+            return DownloadUtil.download(name, mimeType, path, eTag, requestHeaders);
         } catch (IOException e) {
             throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("fileDownloadFailed"));
         }
     }
 
-    public ResponseEntity<StreamingResponseBody> playVideo(String downloadId, String fileName, String range) {
+    public ResponseEntity<StreamingResponseBody> playVideo(String downloadId, String fileName, HttpHeaders requestHeaders) {
         if (Boolean.FALSE.equals(fileProperties.getVideoPlay())) {
             throw new HttpException(I18n.get("videoPlayNotEnabled"));
         }
@@ -557,19 +769,16 @@ public ResponseEntity<StreamingResponseBody> playVideo(String downloadId, String
         if (mimeType == null) {
             throw new HttpException(I18n.get("fileNotSupportPlay"));
         }
-        RList<FileData> fileList = redissonClient.getList(RedisAttribute.DOWNLOAD_ID_PREFIX + downloadId);
-        if (CollectionUtils.isEmpty(fileList)) {
-            throw new HttpException(I18n.get("playLinkExpired"));
-        }
-        FileData file = fileList.getFirst();
+        List<DownloadFileModel> fileList = getDownloadFileList(downloadId, "playLinkExpired");
+        DownloadFileModel file = fileList.getFirst();
         if (fileList.size() != 1 || !MediaUtil.isDashSupported(file.getMimeType(), fileProperties.getVideoPlayMimeType())) {
             throw new HttpException(I18n.get("fileNotSupportPlay"));
         }
-        return downloadChunked(FileUtil.getHashPath(fileProperties.getVideoPlayDir(), file.getHashValue()).resolve(fileName),
-                fileName, mimeType.toString(), range);
+        return download(FileUtil.getHashPath(fileProperties.getVideoPlayDir(), file.getHashValue()).resolve(fileName),
+                fileName, mimeType.toString(), file.getHashValue() + FileAttribute.SEPARATOR + fileName, requestHeaders);
     }
 
-    public ResponseEntity<StreamingResponseBody> thumbnail(String userId, String id) {
+    public ResponseEntity<StreamingResponseBody> thumbnail(String userId, String id, HttpHeaders requestHeaders) {
         FileData file = fileDataRepository.findFirstByUserIdAndId(userId, id)
                 .orElseThrow(() -> new HttpException(I18n.get("fileNotExist")));
         String mimeType = file.getMimeType();
@@ -577,24 +786,39 @@ public ResponseEntity<StreamingResponseBody> thumbnail(String userId, String id)
                 fileProperties.getThumbnailVideoMimeType())) {
             throw new HttpException(I18n.get("fileNotSupportThumbnail"));
         }
-        AtomicReference<Path> thumbnailPath = new AtomicReference<>(FileUtil.getHashPath(fileProperties.getThumbnailDir(),
-                file.getHashValue(), FileAttribute.THUMBNAIL_FILE_SUFFIX));
-        if (!Files.isRegularFile(thumbnailPath.get())) {
-            distributedLock.tryLock(RedisAttribute.LockType.file, RedisAttribute.GENERATE_THUMBNAIL + file.getHashValue(), () -> {
-                try {
-                    thumbnailPath.set(ThumbnailUtil.generateThumbnail(mimeType,
-                            FileUtil.getHashPath(fileProperties.getDir(), file.getHashValue()), thumbnailPath.get(),
-                            fileProperties.getThumbnailImageMimeType(), fileProperties.getThumbnailVideoMimeType(),
-                            fileProperties.getThumbnailGenerateTimeout()));
-                } catch (ThumbnailUtil.FileNotSupportThumbnailException e) {
-                    throw new HttpException(I18n.get("fileNotSupportThumbnail"));
-                } catch (ThumbnailUtil.ThumbnailGenerationFailedException | IOException | ExecutionException |
-                         InterruptedException e) {
-                    throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("thumbnailGenerationFailed"));
-                }
-            }, null);
+        String eTag = file.getHashValue() + FileAttribute.THUMBNAIL_FILE_SUFFIX;
+        if (DownloadUtil.isNotModified(eTag, requestHeaders)) {
+            return DownloadUtil.notModified(eTag);
+        }
+        Path thumbnailPath = FileUtil.getHashPath(fileProperties.getThumbnailDir(),
+                file.getHashValue(), FileAttribute.THUMBNAIL_FILE_SUFFIX);
+        if (!Files.isRegularFile(thumbnailPath)) {
+            if (!fileUploadSuccessEvent.publishThumbnail(file)) {
+                throw new HttpException(HttpStatus.INTERNAL_SERVER_ERROR, I18n.get("thumbnailGenerationFailed"));
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(THUMBNAIL_RETRY_AFTER_SECONDS))
+                    .build();
+        }
+        return download(thumbnailPath, FileAttribute.DOWNLOAD_THUMBNAIL_NAME,
+                FileAttribute.MimeType.WEBP.value().toString(), eTag, requestHeaders);
+    }
+
+    public void prefetchThumbnail(String userId, List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        if (idList.size() > MAX_PREFETCH_THUMBNAIL_SIZE) {
+            idList = idList.subList(0, MAX_PREFETCH_THUMBNAIL_SIZE);
+        }
+        for (FileData file : fileDataRepository.findAllByUserIdAndIdInAndDeletedFalse(userId, idList)) {
+            if (ThumbnailUtil.hasThumbnail(file.getMimeType(), fileProperties.getThumbnailImageMimeType(),
+                    fileProperties.getThumbnailVideoMimeType())
+                    && !Files.isRegularFile(FileUtil.getHashPath(fileProperties.getThumbnailDir(),
+                    file.getHashValue(), FileAttribute.THUMBNAIL_FILE_SUFFIX))) {
+                fileUploadSuccessEvent.publishThumbnail(file);
+            }
         }
-        return DownloadUtil.download(FileAttribute.DOWNLOAD_THUMBNAIL_NAME, FileAttribute.MimeType.WEBP.value().toString(), thumbnailPath.get());
     }
 
 }
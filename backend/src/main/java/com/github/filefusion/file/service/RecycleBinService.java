@@ -58,7 +58,7 @@ public void deleteAll(String userId) {
         List<FileData> fileDataList = fileDataRepository.findAllByUserIdAndParentIdAndDeletedTrue(userId, FileAttribute.RECYCLE_BIN_ROOT);
         List<FileData> allFileList = new ArrayList<>(fileDataList);
         for (FileData fileData : fileDataList) {
-            allFileList.addAll(fileDataService.findAllChildren(fileData.getId()));
+            allFileList.addAll(fileDataService.findAllChildren(fileData));
         }
         fileDataService.batchDelete(allFileList);
     }
@@ -68,7 +68,7 @@ public void deleteAll() {
         List<FileData> fileDataList = fileDataRepository.findAllByParentIdAndDeletedTrue(FileAttribute.RECYCLE_BIN_ROOT);
         List<FileData> allFileList = new ArrayList<>(fileDataList);
         for (FileData fileData : fileDataList) {
-            allFileList.addAll(fileDataService.findAllChildren(fileData.getId()));
+            allFileList.addAll(fileDataService.findAllChildren(fileData));
         }
         fileDataService.batchDelete(allFileList);
     }
@@ -0,0 +1,104 @@
+package com.github.filefusion.file.service;
+
+import com.github.filefusion.common.FileProperties;
+import com.github.filefusion.constant.RedisAttribute;
+import com.github.filefusion.file.model.UploadSessionModel;
+import org.redisson.api.RBitSet;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * UploadSessionService
+ * <p>
+ * Tracks the received chunks of an upload as a bitmap, so clients can resume and merge can check completeness
+ * without listing the chunk directory.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Service
+public class UploadSessionService {
+
+    private static final String CHUNK_BITMAP = "chunk";
+    private static final String CHUNK_SIZE = "chunkSize";
+
+    private final RedissonClient redissonClient;
+    private final FileProperties fileProperties;
+
+    @Autowired
+    public UploadSessionService(RedissonClient redissonClient, FileProperties fileProperties) {
+        this.redissonClient = redissonClient;
+        this.fileProperties = fileProperties;
+    }
+
+    private RBitSet getChunkBitmap(String hashValue) {
+        return redissonClient.getBitSet(RedisAttribute.UPLOAD_SESSION_PREFIX + hashValue
+                + RedisAttribute.SEPARATOR + CHUNK_BITMAP);
+    }
+
+    private RMap<String, Long> getSession(String hashValue) {
+        return redissonClient.getMap(RedisAttribute.UPLOAD_SESSION_PREFIX + hashValue);
+    }
+
+    /**
+     * expected chunk count of a file, chunk 0 is always a full chunk
+     *
+     * @param chunkSize chunk size
+     * @param size      file size
+     * @return chunk count
+     */
+    private static long chunkCount(long chunkSize, long size) {
+        if (chunkSize <= 0 || chunkSize >= size) {
+            return 1;
+        }
+        return (size + chunkSize - 1) / chunkSize;
+    }
+
+    public void chunkReceived(String hashValue, int chunkIndex, long chunkSize) {
+        RBitSet chunkBitmap = getChunkBitmap(hashValue);
+        RMap<String, Long> session = getSession(hashValue);
+        chunkBitmap.set(chunkIndex);
+        if (chunkIndex == 0) {
+            session.fastPut(CHUNK_SIZE, chunkSize);
+        }
+        chunkBitmap.expire(fileProperties.getUploadSessionTimeout());
+        session.expire(fileProperties.getUploadSessionTimeout());
+    }
+
+    public UploadSessionModel get(String hashValue) {
+        UploadSessionModel uploadSession = new UploadSessionModel();
+        uploadSession.setHashValue(hashValue);
+        uploadSession.setChunkSize(getSession(hashValue).get(CHUNK_SIZE));
+        uploadSession.setReceivedChunkList(getChunkBitmap(hashValue).asBitSet().stream().boxed().toList());
+        return uploadSession;
+    }
+
+    /**
+     * chunk count of a complete upload, -1 when there is no session or not all chunks are received
+     *
+     * @param hashValue hash value
+     * @param size      file size
+     * @return chunk count
+     */
+    public long completeChunkCount(String hashValue, long size) {
+        Long chunkSize = getSession(hashValue).get(CHUNK_SIZE);
+        if (chunkSize == null) {
+            return -1;
+        }
+        long chunkCount = chunkCount(chunkSize, size);
+        RBitSet chunkBitmap = getChunkBitmap(hashValue);
+        return chunkBitmap.length() == chunkCount && chunkBitmap.cardinality() == chunkCount ? chunkCount : -1;
+    }
+
+    public boolean exists(String hashValue) {
+        return redissonClient.getKeys().countExists(getSession(hashValue).getName(),
+                getChunkBitmap(hashValue).getName()) > 0;
+    }
+
+    public void remove(String hashValue) {
+        redissonClient.getKeys().delete(getSession(hashValue).getName(), getChunkBitmap(hashValue).getName());
+    }
+
+}
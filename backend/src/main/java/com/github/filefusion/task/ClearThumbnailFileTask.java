@@ -7,6 +7,7 @@
 import com.github.filefusion.file.repository.FileDataRepository;
 import com.github.filefusion.util.DistributedLock;
 import com.github.filefusion.util.file.FileUtil;
+import com.github.filefusion.util.file.ThumbnailUtil;
 import jakarta.annotation.Nonnull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -19,6 +20,7 @@
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -56,13 +58,18 @@ public void clearThumbnailFileTask() {
         distributedLock.tryLock(RedisAttribute.LockType.task, LOCK_KEY, () -> {
             try {
                 Map<String, Path> thumbnailMap = new HashMap<>();
+                Instant staleTempTime = Instant.now().minus(fileProperties.getThumbnailGenerateTimeout());
                 Files.walkFileTree(fileProperties.getThumbnailDir(), new SimpleFileVisitor<>() {
                     @Override
                     @Nonnull
                     public FileVisitResult visitFile(Path file, @Nonnull BasicFileAttributes attrs) {
                         try {
                             String fileName = file.getFileName().toString();
-                            if (!FileAttribute.THUMBNAIL_FILE_SUFFIX.equals(fileName)
+                            if (fileName.startsWith(ThumbnailUtil.TEMP_FILE_PREFIX)) {
+                                if (attrs.lastModifiedTime().toInstant().isBefore(staleTempTime)) {
+                                    Files.deleteIfExists(file);
+                                }
+                            } else if (!FileAttribute.THUMBNAIL_FILE_SUFFIX.equals(fileName)
                                     && fileName.endsWith(FileAttribute.THUMBNAIL_FILE_SUFFIX)) {
                                 String hash = fileName.substring(0, fileName.length() - FileAttribute.THUMBNAIL_FILE_SUFFIX.length());
                                 thumbnailMap.put(hash, file);
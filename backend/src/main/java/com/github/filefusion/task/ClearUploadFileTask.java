@@ -0,0 +1,194 @@
+package com.github.filefusion.task;
+
+import com.github.filefusion.common.FileProperties;
+import com.github.filefusion.constant.RedisAttribute;
+import com.github.filefusion.file.service.UploadSessionService;
+import com.github.filefusion.util.DistributedLock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClearUploadFileTask
+ * <p>
+ * Removes the chunk directories of uploads that were abandoned, one directory at a time so memory stays bounded.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Slf4j
+@Component
+public class ClearUploadFileTask {
+
+    private static final String LOCK_KEY = "clearUploadFileTask";
+    private static final int HASH_LENGTH = 64;
+    private static final int MAX_FILE_OPERATIONS_PER_SECOND = 500;
+
+    private final DistributedLock distributedLock;
+    private final FileProperties fileProperties;
+    private final UploadSessionService uploadSessionService;
+    private final Counter reclaimedBytesCounter;
+    private final Counter reclaimedUploadCounter;
+    private final Counter skippedUploadCounter;
+
+    @Autowired
+    public ClearUploadFileTask(DistributedLock distributedLock,
+                               FileProperties fileProperties,
+                               UploadSessionService uploadSessionService,
+                               MeterRegistry meterRegistry) {
+        this.distributedLock = distributedLock;
+        this.fileProperties = fileProperties;
+        this.uploadSessionService = uploadSessionService;
+        this.reclaimedBytesCounter = Counter.builder("file_fusion.upload.reclaimed")
+                .description("Bytes of abandoned upload chunks deleted")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.reclaimedUploadCounter = Counter.builder("file_fusion.upload.reclaimed.uploads")
+                .description("Abandoned uploads deleted")
+                .register(meterRegistry);
+        this.skippedUploadCounter = Counter.builder("file_fusion.upload.reclaim.skipped")
+                .description("Abandoned uploads skipped because their lock was held")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${task.clear-upload-file}")
+    public void clearUploadFileTask() {
+        distributedLock.tryLock(RedisAttribute.LockType.task, LOCK_KEY, () -> {
+            Path uploadDir = fileProperties.getUploadDir();
+            FileTime expiredTime = FileTime.from(Instant.now().minus(fileProperties.getUploadSessionTimeout()));
+            Throttle throttle = new Throttle();
+            AtomicLong reclaimedBytes = new AtomicLong();
+            try {
+                Files.walkFileTree(uploadDir, new SimpleFileVisitor<>() {
+                    @Override
+                    @Nonnull
+                    public FileVisitResult preVisitDirectory(Path dir, @Nonnull BasicFileAttributes attrs) {
+                        String hashValue = dir.getFileName().toString();
+                        if (dir.equals(uploadDir) || hashValue.length() != HASH_LENGTH) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        try {
+                            reclaimedBytes.addAndGet(clearUpload(hashValue, dir, expiredTime, throttle));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        } catch (Exception e) {
+                            log.error("Error clearing upload {}", hashValue, e);
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    @Nonnull
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                        if (dir.equals(uploadDir)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        try {
+                            throttle.acquire();
+                            if (Files.getLastModifiedTime(dir).compareTo(expiredTime) < 0) {
+                                Files.deleteIfExists(dir);
+                            }
+                        } catch (DirectoryNotEmptyException ignored) {
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        } catch (Exception e) {
+                            log.error("Error deleting upload directory", e);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (reclaimedBytes.get() > 0) {
+                log.info("Cleared abandoned uploads, reclaimed {} bytes", reclaimedBytes.get());
+            }
+        }, null);
+    }
+
+    private long clearUpload(String hashValue, Path chunkDirPath, FileTime expiredTime, Throttle throttle)
+            throws IOException, InterruptedException {
+        if (Files.getLastModifiedTime(chunkDirPath).compareTo(expiredTime) > 0) {
+            return 0;
+        }
+        try (DirectoryStream<Path> chunkPathStream = Files.newDirectoryStream(chunkDirPath)) {
+            for (Path chunkPath : chunkPathStream) {
+                throttle.acquire();
+                if (Files.getLastModifiedTime(chunkPath).compareTo(expiredTime) > 0) {
+                    return 0;
+                }
+            }
+        }
+        if (uploadSessionService.exists(hashValue)) {
+            return 0;
+        }
+        AtomicLong reclaimedBytes = new AtomicLong();
+        DistributedLock.LockResult lockResult = distributedLock.tryTreeLock(RedisAttribute.LockType.file,
+                List.of(RedisAttribute.UPLOAD_CHUNK_PREFIX + hashValue), List.of(hashValue), () -> {
+            try {
+                if (Files.getLastModifiedTime(chunkDirPath).compareTo(expiredTime) > 0
+                        || uploadSessionService.exists(hashValue)) {
+                    log.info("Upload {} was resumed, keeping it", hashValue);
+                    return;
+                }
+            } catch (IOException e) {
+                log.error("Error checking upload {}", hashValue, e);
+                return;
+            }
+            try (DirectoryStream<Path> chunkPathStream = Files.newDirectoryStream(chunkDirPath)) {
+                for (Path chunkPath : chunkPathStream) {
+                    throttle.acquire();
+                    long size = Files.size(chunkPath);
+                    Files.delete(chunkPath);
+                    reclaimedBytes.addAndGet(size);
+                }
+                Files.delete(chunkDirPath);
+                reclaimedUploadCounter.increment();
+            } catch (IOException e) {
+                log.error("Error deleting upload {}", hashValue, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, null);
+        if (lockResult != DistributedLock.LockResult.acquired) {
+            skippedUploadCounter.increment();
+            log.info("Upload {} is in use ({}), skipping it", hashValue, lockResult);
+        }
+        reclaimedBytesCounter.increment(reclaimedBytes.get());
+        return reclaimedBytes.get();
+    }
+
+    /**
+     * Spaces out file operations so the sweep does not compete with uploads for disk
+     */
+    private static final class Throttle {
+
+        private final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / MAX_FILE_OPERATIONS_PER_SECOND;
+        private long nextNanos = System.nanoTime();
+
+        private void acquire() throws InterruptedException {
+            long now = System.nanoTime();
+            if (nextNanos > now) {
+                TimeUnit.NANOSECONDS.sleep(nextNanos - now);
+            }
+            nextNanos = Math.max(nextNanos, now) + intervalNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.github.filefusion.task;
+
+import com.github.filefusion.constant.RedisAttribute;
+import com.github.filefusion.event.FileUploadSuccessEvent;
+import com.github.filefusion.util.DistributedLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * RecoverMediaJobTask
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Component
+public class RecoverMediaJobTask {
+
+    private static final String LOCK_KEY = "recoverMediaJobTask";
+
+    private final DistributedLock distributedLock;
+    private final FileUploadSuccessEvent fileUploadSuccessEvent;
+
+    @Autowired
+    public RecoverMediaJobTask(DistributedLock distributedLock,
+                               FileUploadSuccessEvent fileUploadSuccessEvent) {
+        this.distributedLock = distributedLock;
+        this.fileUploadSuccessEvent = fileUploadSuccessEvent;
+    }
+
+    @Scheduled(cron = "${task.recover-media-job}")
+    public void recoverMediaJobTask() {
+        distributedLock.tryLock(RedisAttribute.LockType.task, LOCK_KEY, fileUploadSuccessEvent::recover, null);
+    }
+
+}
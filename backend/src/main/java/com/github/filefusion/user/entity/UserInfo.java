@@ -1,6 +1,8 @@
 package com.github.filefusion.user.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.filefusion.common.BaseEntity;
+import com.github.filefusion.user.model.AuthoritySet;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Transient;
 import lombok.Data;
@@ -92,4 +94,11 @@ public class UserInfo extends BaseEntity {
     @Transient
     private List<String> permissionIds;
 
+    /**
+     * authority set, resolved on each node
+     */
+    @Transient
+    @JsonIgnore
+    private transient AuthoritySet authoritySet;
+
 }
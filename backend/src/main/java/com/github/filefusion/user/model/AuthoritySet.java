@@ -0,0 +1,62 @@
+package com.github.filefusion.user.model;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AuthoritySet
+ * <p>
+ * Immutable set of permissions as bits over the permission table, shared by every user with the same permissions.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public final class AuthoritySet {
+
+    /**
+     * bit of each permission id
+     */
+    private final Map<String, Integer> permissionBits;
+
+    /**
+     * granted permission bits
+     */
+    private final BitSet bits;
+
+    /**
+     * granted authorities
+     */
+    private final List<GrantedAuthority> authorities;
+
+    public AuthoritySet(Map<String, Integer> permissionBits, List<GrantedAuthority> permissionAuthorities, BitSet bits) {
+        this.permissionBits = permissionBits;
+        this.bits = (BitSet) bits.clone();
+        this.authorities = this.bits.stream().mapToObj(permissionAuthorities::get).toList();
+    }
+
+    public boolean contains(String authority) {
+        Integer bit = permissionBits.get(authority);
+        return bit != null && bits.get(bit);
+    }
+
+    public boolean containsAny(String... authorities) {
+        for (String authority : authorities) {
+            if (contains(authority)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public List<String> getPermissionIds() {
+        return authorities.stream().map(GrantedAuthority::getAuthority).toList();
+    }
+
+}
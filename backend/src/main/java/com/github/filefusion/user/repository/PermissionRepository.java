@@ -33,15 +33,6 @@ public interface PermissionRepository extends JpaRepository<Permission, String>
      */
     List<Permission> findAllByIdInAndBasics(List<String> ids, Boolean basics);
 
-    /**
-     * findAllByUserId
-     *
-     * @param userId user id
-     * @return permission list
-     */
-    @Query("FROM permission p WHERE p.id IN (SELECT rp.permissionId FROM role_permission rp WHERE rp.roleId IN (SELECT ur.roleId FROM user_role ur WHERE ur.userId = ?1)) OR p.basics = true")
-    List<Permission> findAllByUserId(String userId);
-
     /**
      * findAllByRoleId
      *
@@ -3,8 +3,11 @@
 import com.github.filefusion.user.entity.RolePermission;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * RolePermissionRepository
  *
@@ -22,4 +25,13 @@ public interface RolePermissionRepository extends JpaRepository<RolePermission,
     @Modifying
     void deleteAllByRoleId(String roleId);
 
+    /**
+     * findAllPermissionIdByUserId
+     *
+     * @param userId user id
+     * @return permission id list
+     */
+    @Query("SELECT DISTINCT rp.permissionId FROM role_permission rp, user_role ur WHERE rp.roleId = ur.roleId AND ur.userId = ?1")
+    List<String> findAllPermissionIdByUserId(String userId);
+
 }
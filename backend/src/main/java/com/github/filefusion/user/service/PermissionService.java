@@ -1,15 +1,22 @@
 package com.github.filefusion.user.service;
 
 import com.github.filefusion.user.entity.Permission;
+import com.github.filefusion.user.model.AuthoritySet;
 import com.github.filefusion.user.repository.PermissionRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * PermissionService
+ * <p>
+ * Permissions only change with migrations, so they are indexed once and every permission set is interned against the index.
  *
  * @author hackyo
  * @since 2022/4/1
@@ -18,12 +25,35 @@
 public class PermissionService {
 
     private final PermissionRepository permissionRepository;
+    private final Map<BitSet, AuthoritySet> authoritySetMap = new ConcurrentHashMap<>();
+    private Map<String, Integer> permissionBits;
+    private List<GrantedAuthority> permissionAuthorities;
+    private BitSet basicsBits;
 
     @Autowired
     public PermissionService(PermissionRepository permissionRepository) {
         this.permissionRepository = permissionRepository;
     }
 
+    @PostConstruct
+    public void indexPermissions() {
+        List<Permission> permissions = permissionRepository.findAll(Sort.by(Sort.Direction.ASC, "id"));
+        Map<String, Integer> bits = new HashMap<>(permissions.size() * 2);
+        List<GrantedAuthority> authorities = new ArrayList<>(permissions.size());
+        BitSet basics = new BitSet(permissions.size());
+        for (int i = 0; i < permissions.size(); i++) {
+            Permission permission = permissions.get(i);
+            bits.put(permission.getId(), i);
+            authorities.add(new SimpleGrantedAuthority(permission.getId()));
+            if (Boolean.TRUE.equals(permission.getBasics())) {
+                basics.set(i);
+            }
+        }
+        this.permissionBits = Map.copyOf(bits);
+        this.permissionAuthorities = List.copyOf(authorities);
+        this.basicsBits = basics;
+    }
+
     public List<Permission> get(Boolean basics) {
         if (basics == null) {
             return permissionRepository.findAll(Sort.by(Sort.Direction.ASC, "name"));
@@ -32,4 +62,15 @@ public List<Permission> get(Boolean basics) {
         }
     }
 
+    public AuthoritySet getAuthoritySet(Collection<String> permissionIds) {
+        BitSet bits = (BitSet) basicsBits.clone();
+        for (String permissionId : permissionIds) {
+            Integer bit = permissionBits.get(permissionId);
+            if (bit != null) {
+                bits.set(bit);
+            }
+        }
+        return authoritySetMap.computeIfAbsent(bits, b -> new AuthoritySet(permissionBits, permissionAuthorities, b));
+    }
+
 }
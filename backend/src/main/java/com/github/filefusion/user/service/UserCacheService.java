@@ -1,11 +1,11 @@
 package com.github.filefusion.user.service;
 
-import com.github.filefusion.user.entity.Permission;
 import com.github.filefusion.user.entity.UserInfo;
-import com.github.filefusion.user.repository.PermissionRepository;
+import com.github.filefusion.user.repository.RolePermissionRepository;
 import com.github.filefusion.user.repository.UserInfoRepository;
 import com.github.filefusion.util.BaseCacheService;
 import com.github.filefusion.util.DistributedLock;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,16 +21,20 @@
 public class UserCacheService extends BaseCacheService<UserInfo> {
 
     private final UserInfoRepository userRepository;
-    private final PermissionRepository permissionRepository;
+    private final RolePermissionRepository rolePermissionRepository;
+    private final PermissionService permissionService;
 
     @Autowired
     public UserCacheService(RedissonClient redissonClient,
                             DistributedLock distributedLock,
+                            MeterRegistry meterRegistry,
                             UserInfoRepository userRepository,
-                            PermissionRepository permissionRepository) {
-        super(redissonClient, distributedLock);
+                            RolePermissionRepository rolePermissionRepository,
+                            PermissionService permissionService) {
+        super(redissonClient, distributedLock, meterRegistry);
         this.userRepository = userRepository;
-        this.permissionRepository = permissionRepository;
+        this.rolePermissionRepository = rolePermissionRepository;
+        this.permissionService = permissionService;
     }
 
     @Override
@@ -46,8 +50,13 @@ protected String getCacheKeyPrefix() {
     @Override
     protected UserInfo queryFromDb(String id) throws EntityNotFoundException {
         UserInfo user = userRepository.findById(id).orElseThrow(EntityNotFoundException::new);
-        user.setPermissionIds(permissionRepository.findAllByUserId(id).stream().map(Permission::getId).toList());
+        user.setPermissionIds(permissionService.getAuthoritySet(rolePermissionRepository.findAllPermissionIdByUserId(id)).getPermissionIds());
         return user;
     }
 
+    @Override
+    protected void prepareLocal(UserInfo user) {
+        user.setAuthoritySet(permissionService.getAuthoritySet(user.getPermissionIds()));
+    }
+
 }
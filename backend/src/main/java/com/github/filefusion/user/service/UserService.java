@@ -1,5 +1,7 @@
 package com.github.filefusion.user.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.filefusion.common.HttpException;
 import com.github.filefusion.common.SecurityProperties;
 import com.github.filefusion.constant.RedisAttribute;
@@ -14,8 +16,15 @@
 import com.github.filefusion.util.I18n;
 import com.github.filefusion.util.ULID;
 import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -28,27 +37,35 @@
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
  * UserService
+ * <p>
+ * Verified tokens are kept on each node for a short time, renewal runs in the background and revocation is broadcast.
  *
  * @author hackyo
  * @since 2022/4/1
  */
+@Slf4j
 @Service
 public class UserService {
 
     private static final String TOKEN_HEADER = "Bearer ";
     private static final long TOKEN_EXPIRATION = 1000 * 60 * 60 * 24 * 7;
     private static final long TOKEN_RENEWAL_THRESHOLD = 1000 * 60 * 60 * 24;
+    private static final long VERIFIED_TOKEN_MAXIMUM_SIZE = 100_000;
+    private static final Duration VERIFIED_TOKEN_EXPIRATION = Duration.ofMinutes(1);
     private static final PasswordEncoder PASSWORD_ENCODER = new BCryptPasswordEncoder();
 
     private final RedissonClient redissonClient;
@@ -57,6 +74,9 @@ public class UserService {
     private final UserRoleRepository userRoleRepository;
     private final OrgUserRepository orgUserRepository;
     private final UserCacheService userCacheService;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, VerifiedToken> verifiedTokenCache;
+    private RTopic tokenRevocationTopic;
 
     @Autowired
     public UserService(RedissonClient redissonClient,
@@ -64,13 +84,33 @@ public UserService(RedissonClient redissonClient,
                        UserInfoRepository userRepository,
                        UserRoleRepository userRoleRepository,
                        OrgUserRepository orgUserRepository,
-                       UserCacheService userCacheService) {
+                       UserCacheService userCacheService,
+                       MeterRegistry meterRegistry) {
         this.redissonClient = redissonClient;
         this.securityProperties = securityProperties;
         this.userRepository = userRepository;
         this.userRoleRepository = userRoleRepository;
         this.orgUserRepository = orgUserRepository;
         this.userCacheService = userCacheService;
+        this.meterRegistry = meterRegistry;
+        this.verifiedTokenCache = Caffeine.newBuilder()
+                .maximumSize(VERIFIED_TOKEN_MAXIMUM_SIZE)
+                .expireAfterWrite(VERIFIED_TOKEN_EXPIRATION)
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void initVerifiedTokenCache() {
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokenCache, "tokens");
+        tokenRevocationTopic = redissonClient.getTopic(RedisAttribute.TOKEN_REVOCATION, StringCodec.INSTANCE);
+        tokenRevocationTopic.addListener(String.class, (channel, userId) -> evictVerifiedTokens(userId));
+        tokenRevocationTopic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                verifiedTokenCache.invalidateAll();
+            }
+        });
     }
 
     private String generateUserToken(String userId, String userAgent, String clientIp) {
@@ -91,17 +131,72 @@ private String generateUserToken(String userId, String userAgent, String clientI
     }
 
     public void verifyToken(String userId, String tokenId, String userAgent, String clientIp) throws AuthenticationException {
+        String cacheKey = userId + RedisAttribute.SEPARATOR + tokenId;
+        VerifiedToken verifiedToken = verifiedTokenCache.get(cacheKey, key -> loadToken(userId, tokenId));
+        long currentTime = System.currentTimeMillis();
+        if (verifiedToken == null || verifiedToken.expiresAt() < currentTime
+                || !verifiedToken.userToken().getUserAgent().equals(userAgent)) {
+            throw new CredentialsExpiredException(I18n.get("certificationExpired"));
+        }
+        if (verifiedToken.expiresAt() - currentTime < TOKEN_RENEWAL_THRESHOLD
+                && verifiedToken.renewing().compareAndSet(false, true)) {
+            renewToken(userId, tokenId, cacheKey, verifiedToken, clientIp);
+        }
+    }
+
+    private VerifiedToken loadToken(String userId, String tokenId) {
         RMapCache<String, UserTokenModel> userTokenMap = redissonClient.getMapCache(RedisAttribute.TOKEN_PREFIX + userId);
         UserTokenModel userToken = userTokenMap.get(tokenId);
-        if (userToken == null || !userToken.getUserAgent().equals(userAgent)) {
-            throw new CredentialsExpiredException(I18n.get("certificationExpired"));
+        if (userToken == null) {
+            return null;
+        }
+        long remainTimeToLive = userTokenMap.remainTimeToLive(tokenId);
+        if (remainTimeToLive < 0) {
+            remainTimeToLive = TOKEN_EXPIRATION;
         }
-        if (userTokenMap.remainTimeToLive(tokenId) < TOKEN_RENEWAL_THRESHOLD) {
-            userToken.setClientIp(clientIp);
-            userTokenMap.put(tokenId, userToken, TOKEN_EXPIRATION, TimeUnit.MILLISECONDS);
+        return new VerifiedToken(userToken, System.currentTimeMillis() + remainTimeToLive, new AtomicBoolean(false));
+    }
+
+    private void renewToken(String userId, String tokenId, String cacheKey, VerifiedToken verifiedToken, String clientIp) {
+        UserTokenModel renewedToken = new UserTokenModel();
+        renewedToken.setUserAgent(verifiedToken.userToken().getUserAgent());
+        renewedToken.setClientIp(clientIp);
+        renewedToken.setIssuedAt(verifiedToken.userToken().getIssuedAt());
+        long expiresAt = System.currentTimeMillis() + TOKEN_EXPIRATION;
+        RMapCache<String, UserTokenModel> userTokenMap = redissonClient.getMapCache(RedisAttribute.TOKEN_PREFIX + userId);
+        // replace and re-expire only an existing entry, a token revoked meanwhile must stay revoked
+        userTokenMap.fastReplaceAsync(tokenId, renewedToken)
+                .thenCompose(replaced -> replaced
+                        ? userTokenMap.updateEntryExpirationAsync(tokenId, TOKEN_EXPIRATION, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS)
+                        : CompletableFuture.completedFuture(false))
+                .whenComplete((renewed, e) -> {
+                    if (e != null) {
+                        log.error("Error renewing token", e);
+                        verifiedToken.renewing().set(false);
+                    } else if (Boolean.TRUE.equals(renewed)) {
+                        verifiedTokenCache.asMap().replace(cacheKey, verifiedToken,
+                                new VerifiedToken(renewedToken, expiresAt, new AtomicBoolean(false)));
+                    } else {
+                        verifiedTokenCache.invalidate(cacheKey);
+                    }
+                });
+    }
+
+    public void revokeTokens(String userId) {
+        redissonClient.getMapCache(RedisAttribute.TOKEN_PREFIX + userId).delete();
+        evictVerifiedTokens(userId);
+        try {
+            tokenRevocationTopic.publish(userId);
+        } catch (Exception e) {
+            log.error("Error publishing token revocation", e);
         }
     }
 
+    private void evictVerifiedTokens(String userId) {
+        String keyPrefix = userId + RedisAttribute.SEPARATOR;
+        verifiedTokenCache.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
     public void verifyUserStatus(UserInfo userInfo) throws AccountStatusException {
         if (!userInfo.getNonExpired()) {
             throw new AccountExpiredException(I18n.get("userExpired"));
@@ -265,6 +360,17 @@ public void delete(String userId) {
         userRoleRepository.deleteAllByUserId(userId);
         userRepository.deleteById(userId);
         userCacheService.deleteCache(userId);
+        revokeTokens(userId);
+    }
+
+    /**
+     * a token verified against Redis, with the time its session expires
+     *
+     * @param userToken user token
+     * @param expiresAt expires at
+     * @param renewing  renewing
+     */
+    private record VerifiedToken(UserTokenModel userToken, long expiresAt, AtomicBoolean renewing) {
     }
 
 }
@@ -1,18 +1,32 @@
 package com.github.filefusion.util;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.filefusion.common.BaseEntity;
 import com.github.filefusion.constant.RedisAttribute;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * BaseCacheService
+ * <p>
+ * Entities are kept in a bounded local cache in front of Redis, deleting an entry is broadcast to every node.
+ * A miss is loaded once per key: callers on a node share one future, nodes share a short lease on the key.
  *
  * @author hackyo
  * @since 2022/4/1
@@ -22,14 +36,31 @@
 
     private static final Duration CACHE_EXPIRATION = Duration.ofHours(2);
     private static final Duration NULL_CACHE_EXPIRATION = Duration.ofMinutes(2);
+    private static final long LOCAL_CACHE_MAXIMUM_SIZE = 10_000;
+    private static final Duration LOCAL_CACHE_EXPIRATION = Duration.ofMinutes(1);
+    private static final Duration LOCAL_CACHE_REFRESH = Duration.ofSeconds(30);
+    private static final Duration LOAD_LEASE_TIME = Duration.ofSeconds(5);
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
 
     protected final RedissonClient redissonClient;
     protected final DistributedLock distributedLock;
+    private final MeterRegistry meterRegistry;
+    private final AsyncLoadingCache<String, Optional<T>> localCache;
+    private RTopic invalidationTopic;
 
     protected BaseCacheService(RedissonClient redissonClient,
-                               DistributedLock distributedLock) {
+                               DistributedLock distributedLock,
+                               MeterRegistry meterRegistry) {
         this.redissonClient = redissonClient;
         this.distributedLock = distributedLock;
+        this.meterRegistry = meterRegistry;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(LOCAL_CACHE_MAXIMUM_SIZE)
+                .expireAfterWrite(LOCAL_CACHE_EXPIRATION)
+                .refreshAfterWrite(LOCAL_CACHE_REFRESH)
+                .executor(REFRESH_EXECUTOR)
+                .recordStats()
+                .buildAsync(this::load);
     }
 
     protected abstract Class<T> getEntityClass();
@@ -38,30 +69,29 @@ protected BaseCacheService(RedissonClient redissonClient,
 
     protected abstract T queryFromDb(String id) throws EntityNotFoundException;
 
-    public T getByIdFromCache(String id) {
-        String cacheKey = buildCacheKey(id);
-        RBucket<Object> bucket = redissonClient.getBucket(cacheKey);
-        Object cached = bucket.get();
-        if (cached != null) {
-            return handleCachedValue(cached, cacheKey);
-        }
-        AtomicReference<T> result = new AtomicReference<>(null);
-        distributedLock.tryLock(RedisAttribute.LockType.cache, cacheKey, () -> {
-            Object rechecked = bucket.get();
-            if (rechecked != null) {
-                result.set(handleCachedValue(rechecked, cacheKey));
-                return;
-            }
-            try {
-                T entity = queryFromDb(id);
-                bucket.set(entity, CACHE_EXPIRATION);
-                result.set(entity);
-            } catch (EntityNotFoundException e) {
-                bucket.set(NullMarker.INSTANCE, NULL_CACHE_EXPIRATION);
-                result.set(null);
+    /**
+     * prepare an entity before it enters the local cache, for state that is not stored in Redis
+     *
+     * @param entity entity
+     */
+    protected void prepareLocal(T entity) {
+    }
+
+    @PostConstruct
+    public void initLocalCache() {
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache.synchronous(), getCacheKeyPrefix());
+        invalidationTopic = redissonClient.getTopic(RedisAttribute.CACHE_INVALIDATION_PREFIX + getCacheKeyPrefix(), StringCodec.INSTANCE);
+        invalidationTopic.addListener(String.class, (channel, id) -> localCache.synchronous().invalidate(id));
+        invalidationTopic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                localCache.synchronous().invalidateAll();
             }
-        }, null);
-        return result.get();
+        });
+    }
+
+    public T getByIdFromCache(String id) {
+        return localCache.get(id).join().orElse(null);
     }
 
     public void deleteCache(String id) {
@@ -71,23 +101,63 @@ public void deleteCache(String id) {
         } catch (Exception e) {
             log.error("Error deleting cache", e);
         }
+        localCache.synchronous().invalidate(id);
+        try {
+            invalidationTopic.publish(id);
+        } catch (Exception e) {
+            log.error("Error publishing cache invalidation", e);
+        }
     }
 
-    private String buildCacheKey(String id) {
-        return RedisAttribute.CACHE_PREFIX + getCacheKeyPrefix() + RedisAttribute.SEPARATOR + id;
+    private Optional<T> load(String id) {
+        String cacheKey = buildCacheKey(id);
+        RBucket<Object> bucket = redissonClient.getBucket(cacheKey);
+        Optional<T> cached = getCachedValue(bucket);
+        if (cached != null) {
+            cached.ifPresent(this::prepareLocal);
+            return cached;
+        }
+        AtomicReference<Optional<T>> result = new AtomicReference<>(null);
+        distributedLock.tryLock(RedisAttribute.LockType.cache, cacheKey,
+                () -> result.set(loadFromDb(id, bucket)), LOAD_LEASE_TIME, LOAD_LEASE_TIME);
+        if (result.get() == null) {
+            // the lease holder did not finish in time, read through instead of answering null
+            result.set(loadFromDb(id, bucket));
+        }
+        result.get().ifPresent(this::prepareLocal);
+        return result.get();
     }
 
-    private T handleCachedValue(Object cached, String cacheKey) {
+    private Optional<T> loadFromDb(String id, RBucket<Object> bucket) {
+        Optional<T> cached = getCachedValue(bucket);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            T entity = queryFromDb(id);
+            bucket.set(entity, CACHE_EXPIRATION);
+            return Optional.of(entity);
+        } catch (EntityNotFoundException e) {
+            bucket.set(NullMarker.INSTANCE, NULL_CACHE_EXPIRATION);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<T> getCachedValue(RBucket<Object> bucket) {
+        Object cached = bucket.get();
         if (cached instanceof NullMarker) {
-            return null;
+            return Optional.empty();
         }
         if (getEntityClass().isInstance(cached)) {
-            return getEntityClass().cast(cached);
+            return Optional.of(getEntityClass().cast(cached));
         }
-        redissonClient.getBucket(cacheKey).delete();
         return null;
     }
 
+    private String buildCacheKey(String id) {
+        return RedisAttribute.CACHE_PREFIX + getCacheKeyPrefix() + RedisAttribute.SEPARATOR + id;
+    }
+
     private static final class NullMarker implements Serializable {
         private static final NullMarker INSTANCE = new NullMarker();
     }
@@ -0,0 +1,74 @@
+package com.github.filefusion.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.filefusion.common.HttpException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CursorUtil
+ * <p>
+ * Keyset values are kept as plain strings, dates in ISO format, so no precision is lost between requests.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public final class CursorUtil {
+
+    private static final TypeReference<LinkedHashMap<String, String>> KEYS_TYPE = new TypeReference<>() {
+    };
+
+    public static String encode(KeysetScrollPosition position) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        position.getKeys().forEach((key, value) -> keys.put(key, value == null ? null : value.toString()));
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Json.toJsonString(keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetScrollPosition decode(String cursor, Class<?> entityClass) {
+        if (!StringUtils.hasLength(cursor)) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            Map<String, String> keys = Json.OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), KEYS_TYPE);
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Map.Entry<String, String> key : keys.entrySet()) {
+                Field field = ReflectionUtils.findField(entityClass, key.getKey());
+                if (field == null || key.getValue() == null) {
+                    throw new HttpException(I18n.get("invalidCursor"));
+                }
+                values.put(key.getKey(), toValue(field.getType(), key.getValue()));
+            }
+            return ScrollPosition.forward(values);
+        } catch (HttpException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HttpException(I18n.get("invalidCursor"));
+        }
+    }
+
+    private static Object toValue(Class<?> type, String value) {
+        if (type == String.class) {
+            return value;
+        } else if (type == Long.class || type == long.class) {
+            return Long.valueOf(value);
+        } else if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(value);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return Boolean.valueOf(value);
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(value);
+        }
+        throw new HttpException(I18n.get("invalidCursor"));
+    }
+
+}
@@ -1,7 +1,11 @@
 package com.github.filefusion.util;
 
 import com.github.filefusion.constant.RedisAttribute;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RFuture;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,11 +14,17 @@
 import org.springframework.util.StringUtils;
 
 import java.time.Duration;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * DistributedLock
+ * <p>
+ * A subtree is locked at its root with intention locks on the ancestors, blob keys are striped over a fixed set of locks.
+ * All locks are first tried in one pipelined round, waiting only happens when another holder is in the way.
+ * Every acquisition reports its result, wait and hold time by lock type and key pattern.
  *
  * @author hackyo
  * @since 2022/4/1
@@ -23,49 +33,235 @@
 @Component
 public class DistributedLock {
 
+    private static final char TREE_SEPARATOR = '/';
+    private static final String STRIPE_PREFIX = "stripe";
+    private static final int STRIPE_COUNT = 1024;
+    private static final String TREE_PATTERN = "tree";
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9A-Z]{26}");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+    private static final Duration SLOW_HOLD_THRESHOLD = Duration.ofSeconds(10);
+    private static final long SLOW_HOLD_SAMPLE_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
     private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Long> slowHoldSampleTime = new ConcurrentHashMap<>();
 
     @Autowired
-    public DistributedLock(RedissonClient redissonClient) {
+    public DistributedLock(RedissonClient redissonClient,
+                           MeterRegistry meterRegistry) {
         this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private static String lockName(RedisAttribute.LockType lockType, String key) {
+        return RedisAttribute.LOCK_PREFIX + lockType + RedisAttribute.SEPARATOR + key;
     }
 
-    public void tryLock(RedisAttribute.LockType lockType, String key, Runnable task, Duration waitLockTimeout) {
+    private static String keyPattern(String key) {
+        String[] segments = key.split(RedisAttribute.SEPARATOR, -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (HASH_PATTERN.matcher(segments[i]).matches()) {
+                segments[i] = "{hash}";
+            } else if (ID_PATTERN.matcher(segments[i]).matches()) {
+                segments[i] = "{id}";
+            } else if (NUMBER_PATTERN.matcher(segments[i]).matches()) {
+                segments[i] = "{n}";
+            }
+        }
+        return String.join(RedisAttribute.SEPARATOR, segments);
+    }
+
+    private static List<String> ancestors(String treeKey) {
+        List<String> ancestorList = new ArrayList<>();
+        int index = treeKey.lastIndexOf(TREE_SEPARATOR);
+        while (index > 0) {
+            ancestorList.add(treeKey.substring(0, index));
+            index = treeKey.lastIndexOf(TREE_SEPARATOR, index - 1);
+        }
+        return ancestorList;
+    }
+
+    private static List<String> treeRoots(Collection<String> treeKeys) {
+        Set<String> keySet = new HashSet<>(treeKeys);
+        return keySet.stream().filter(key -> ancestors(key).stream().noneMatch(keySet::contains)).toList();
+    }
+
+    public LockResult tryLock(RedisAttribute.LockType lockType, String key, Runnable task, Duration waitLockTimeout) {
+        return tryLock(lockType, key, task, waitLockTimeout, null);
+    }
+
+    public LockResult tryLock(RedisAttribute.LockType lockType, String key, Runnable task, Duration waitLockTimeout, Duration leaseTime) {
         if (lockType == null || !StringUtils.hasLength(key)) {
-            return;
+            throw new IllegalArgumentException("Lock type and key are required");
         }
-        RLock lock = redissonClient.getLock(RedisAttribute.LOCK_PREFIX + lockType + RedisAttribute.SEPARATOR + key);
-        tryLock(lock, task, waitLockTimeout);
+        RLock lock = redissonClient.getLock(lockName(lockType, key));
+        return tryLock(lockType, keyPattern(key), List.of(lock), task, waitLockTimeout, leaseTime);
     }
 
-    public void tryMultiLock(RedisAttribute.LockType lockType, List<String> keyList, Runnable task, Duration waitLockTimeout) {
-        if (lockType == null || CollectionUtils.isEmpty(keyList)) {
-            return;
+    /**
+     * lock the subtrees of the tree keys and the stripes of the striped keys
+     * <p>
+     * tree keys are paths separated by '/', a key whose ancestor is also given is covered by the ancestor
+     *
+     * @param lockType        lock type
+     * @param treeKeys        tree keys
+     * @param stripedKeys     striped keys
+     * @param task            task
+     * @param waitLockTimeout wait lock timeout
+     * @return lock result
+     */
+    public LockResult tryTreeLock(RedisAttribute.LockType lockType, Collection<String> treeKeys, Collection<String> stripedKeys,
+                                  Runnable task, Duration waitLockTimeout) {
+        if (lockType == null || (CollectionUtils.isEmpty(treeKeys) && CollectionUtils.isEmpty(stripedKeys))) {
+            throw new IllegalArgumentException("Lock type and keys are required");
         }
-        RLock[] locks = keyList.stream()
-                .map(k -> RedisAttribute.LOCK_PREFIX + lockType + RedisAttribute.SEPARATOR + k)
-                .map(redissonClient::getLock).toArray(RLock[]::new);
-        RLock multiLock = redissonClient.getMultiLock(locks);
-        tryLock(multiLock, task, waitLockTimeout);
+        SortedMap<String, RLock> lockMap = new TreeMap<>();
+        if (!CollectionUtils.isEmpty(treeKeys)) {
+            for (String root : treeRoots(treeKeys)) {
+                String rootName = lockName(lockType, root);
+                lockMap.put(rootName, redissonClient.getReadWriteLock(rootName).writeLock());
+                for (String ancestor : ancestors(root)) {
+                    String ancestorName = lockName(lockType, ancestor);
+                    lockMap.putIfAbsent(ancestorName, redissonClient.getReadWriteLock(ancestorName).readLock());
+                }
+            }
+        }
+        if (!CollectionUtils.isEmpty(stripedKeys)) {
+            for (String key : stripedKeys) {
+                String stripeName = lockName(lockType, STRIPE_PREFIX + RedisAttribute.SEPARATOR
+                        + Math.floorMod(key.hashCode(), STRIPE_COUNT));
+                lockMap.putIfAbsent(stripeName, redissonClient.getLock(stripeName));
+            }
+        }
+        String keyPattern = CollectionUtils.isEmpty(treeKeys) ? STRIPE_PREFIX : TREE_PATTERN;
+        return tryLock(lockType, keyPattern, new ArrayList<>(lockMap.values()), task, waitLockTimeout, null);
     }
 
-    private void tryLock(RLock lock, Runnable task, Duration waitLockTimeout) {
+    private LockResult tryLock(RedisAttribute.LockType lockType, String keyPattern, List<RLock> locks, Runnable task,
+                               Duration waitLockTimeout, Duration leaseTime) {
+        long threadId = Thread.currentThread().threadId();
+        long startTime = System.nanoTime();
+        long acquiredTime = 0;
+        boolean fastPath = true;
         boolean isLockAcquired = false;
+        LockResult result = null;
         try {
-            isLockAcquired = waitLockTimeout == null ? lock.tryLock() : lock.tryLock(waitLockTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            isLockAcquired = tryLockAll(locks, leaseTime, threadId);
+            if (!isLockAcquired && waitLockTimeout != null) {
+                fastPath = false;
+                RLock lock = locks.size() == 1 ? locks.getFirst() : redissonClient.getMultiLock(locks.toArray(RLock[]::new));
+                long leaseMillis = leaseTime == null ? -1 : leaseTime.toMillis();
+                isLockAcquired = lock.tryLock(waitLockTimeout.toMillis(), leaseMillis, TimeUnit.MILLISECONDS);
+            }
+            acquiredTime = System.nanoTime();
+            result = isLockAcquired ? LockResult.acquired : LockResult.contended;
             if (!isLockAcquired) {
-                log.warn("Lock acquired by {} failed", lock.getName());
-                return;
+                log.warn("Lock acquired by {} failed after {} ms", locks.getFirst().getName(),
+                        TimeUnit.NANOSECONDS.toMillis(acquiredTime - startTime));
+                return result;
             }
             task.run();
+            return result;
         } catch (InterruptedException e) {
             log.error("Error executing command", e);
             Thread.currentThread().interrupt();
+            result = LockResult.interrupted;
+            return result;
         } finally {
-            if (isLockAcquired && lock.isHeldByCurrentThread()) {
-                lock.unlock();
+            long endTime = System.nanoTime();
+            if (isLockAcquired) {
+                unlockAll(locks, threadId);
+                recordHold(lockType, keyPattern, locks.getFirst().getName(), endTime - acquiredTime);
             }
+            recordAcquisition(lockType, keyPattern, locks.size(), fastPath, result == null ? LockResult.failed : result,
+                    (acquiredTime == 0 ? endTime : acquiredTime) - startTime);
         }
     }
 
+    private boolean tryLockAll(List<RLock> locks, Duration leaseTime, long threadId) {
+        List<RFuture<Boolean>> futureList = locks.stream().map(lock -> leaseTime == null
+                ? lock.tryLockAsync(threadId)
+                : lock.tryLockAsync(0, leaseTime.toMillis(), TimeUnit.MILLISECONDS, threadId)).toList();
+        List<RLock> acquiredList = new ArrayList<>(locks.size());
+        boolean allAcquired = true;
+        for (int i = 0; i < futureList.size(); i++) {
+            try {
+                if (Boolean.TRUE.equals(futureList.get(i).toCompletableFuture().join())) {
+                    acquiredList.add(locks.get(i));
+                } else {
+                    allAcquired = false;
+                }
+            } catch (Exception e) {
+                log.error("Error acquiring lock {}", locks.get(i).getName(), e);
+                allAcquired = false;
+            }
+        }
+        if (!allAcquired) {
+            unlockAll(acquiredList, threadId);
+        }
+        return allAcquired;
+    }
+
+    private void unlockAll(List<RLock> locks, long threadId) {
+        List<RFuture<Void>> futureList = locks.stream().map(lock -> lock.unlockAsync(threadId)).toList();
+        for (RFuture<Void> future : futureList) {
+            try {
+                future.toCompletableFuture().join();
+            } catch (Exception ignored) {
+                // the lease of the lock expired before the task finished
+            }
+        }
+    }
+
+    private void recordAcquisition(RedisAttribute.LockType lockType, String keyPattern, int lockCount,
+                                   boolean fastPath, LockResult result, long waitNanos) {
+        Timer.builder("file_fusion.lock.wait")
+                .description("Time spent acquiring distributed locks")
+                .tags("type", lockType.name(), "key", keyPattern, "path", fastPath ? "fast" : "slow", "result", result.name())
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofNanos(waitNanos));
+        DistributionSummary.builder("file_fusion.lock.keys")
+                .description("Redis locks taken per acquisition")
+                .tags("type", lockType.name(), "key", keyPattern)
+                .register(meterRegistry)
+                .record(lockCount);
+        if (result != LockResult.acquired) {
+            meterRegistry.counter("file_fusion.lock.failures", "type", lockType.name(), "key", keyPattern,
+                    "result", result.name()).increment();
+        }
+    }
+
+    private void recordHold(RedisAttribute.LockType lockType, String keyPattern, String lockName, long holdNanos) {
+        Timer.builder("file_fusion.lock.hold")
+                .description("Time distributed locks are held")
+                .tags("type", lockType.name(), "key", keyPattern)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofNanos(holdNanos));
+        if (holdNanos < SLOW_HOLD_THRESHOLD.toNanos()) {
+            return;
+        }
+        long now = System.nanoTime();
+        String sampleKey = lockType + RedisAttribute.SEPARATOR + keyPattern;
+        Long lastSampleTime = slowHoldSampleTime.get(sampleKey);
+        if (lastSampleTime != null && now - lastSampleTime < SLOW_HOLD_SAMPLE_INTERVAL) {
+            return;
+        }
+        slowHoldSampleTime.put(sampleKey, now);
+        log.warn("Lock {} held for {} ms", lockName, TimeUnit.NANOSECONDS.toMillis(holdNanos),
+                new Throwable("Slow lock holder"));
+    }
+
+    /**
+     * Result of a lock attempt, the task only ran when the lock was acquired
+     */
+    public enum LockResult {
+        acquired,
+        contended,
+        interrupted,
+        failed
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.github.filefusion.util;
 
+import io.micrometer.core.instrument.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.exec.*;
 import org.apache.commons.exec.Executor;
@@ -7,12 +8,22 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 /**
  * ExecUtil
+ * <p>
+ * Subprocesses run in bounded pools per priority, queued per owner and served round robin,
+ * so one user cannot fill a pool and background work cannot take the CPU from interactive requests.
  *
  * @author hackyo
  * @since 2022/4/1
@@ -21,32 +32,55 @@
 public final class ExecUtil {
 
     private static final long TIMEOUT_BUFFER_MS = 1000L;
+    private static final int MAX_QUEUED_PER_PERMIT = 32;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
     private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final String NICE = Stream.of("/usr/bin/nice", "/bin/nice")
+            .filter(path -> Files.isExecutable(Path.of(path)))
+            .findFirst().orElse(null);
+    private static final Map<Priority, ProcessPool> POOLS = Map.of(
+            Priority.interactive, new ProcessPool(Priority.interactive, Math.max(2, CPU_COUNT)),
+            Priority.background, new ProcessPool(Priority.background, Math.max(1, CPU_COUNT / 2))
+    );
 
     public static void close() {
         EXECUTOR.shutdownNow();
     }
 
-    public static ExecResult exec(String command, Duration execTimeout)
+    public static ExecResult exec(String command, Duration execTimeout, Priority priority, String owner)
             throws IOException, ExecutionException, InterruptedException {
-        return exec(CommandLine.parse(command), execTimeout);
+        return exec(CommandLine.parse(command), execTimeout, priority, owner);
     }
 
-    public static ExecResult exec(CommandLine commandLine, Duration execTimeout)
+    public static ExecResult exec(CommandLine commandLine, Duration execTimeout, Priority priority, String owner)
             throws IOException, ExecutionException, InterruptedException {
         ConcurrentLinkedQueue<String> stdoutQueue = new ConcurrentLinkedQueue<>();
         ConcurrentLinkedQueue<String> stderrQueue = new ConcurrentLinkedQueue<>();
         CompletableFuture<Integer> completable;
         try (OutputStream outputStream = new CollectingLogOutputStream(stdoutQueue);
              OutputStream errorOutputStream = new CollectingLogOutputStream(stderrQueue)) {
-            completable = exec(commandLine, outputStream, errorOutputStream, execTimeout);
+            completable = exec(commandLine, outputStream, errorOutputStream, execTimeout, POOLS.get(priority), owner);
+            completable.get();
         }
         return new ExecResult(completable.get() == 0, List.copyOf(stdoutQueue), List.copyOf(stderrQueue));
     }
 
+    private static CommandLine nice(CommandLine commandLine, int niceness) {
+        if (NICE == null || niceness == 0) {
+            return commandLine;
+        }
+        CommandLine niceCommandLine = new CommandLine(NICE);
+        niceCommandLine.addArgument("-n");
+        niceCommandLine.addArgument(String.valueOf(niceness));
+        niceCommandLine.addArgument(commandLine.getExecutable(), false);
+        niceCommandLine.addArguments(commandLine.getArguments(), false);
+        return niceCommandLine;
+    }
+
     private static CompletableFuture<Integer> exec(CommandLine commandLine, OutputStream outputStream,
-                                                   OutputStream errorOutputStream, Duration execTimeout) {
-        if (commandLine == null || execTimeout == null || execTimeout.isNegative()) {
+                                                   OutputStream errorOutputStream, Duration execTimeout,
+                                                   ProcessPool pool, String owner) {
+        if (commandLine == null || execTimeout == null || execTimeout.isNegative() || pool == null) {
             return CompletableFuture.completedFuture(-1);
         }
 
@@ -54,18 +88,33 @@ private static CompletableFuture<Integer> exec(CommandLine commandLine, OutputSt
         Executor executor = DefaultExecutor.builder().get();
         executor.setWatchdog(watchdog);
         executor.setStreamHandler(new PumpStreamHandler(outputStream, errorOutputStream));
+        CommandLine pooledCommandLine = nice(commandLine, pool.priority.niceness);
 
-        return CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return executor.execute(commandLine);
-                    } catch (ExecuteException e) {
-                        log.error("Error executing command", e);
-                        return e.getExitValue();
-                    } catch (Exception e) {
-                        log.error("Error executing command", e);
-                        throw new CompletionException(e);
-                    }
-                }, EXECUTOR)
+        CompletableFuture<Integer> completable = new CompletableFuture<>();
+        long queuedTime = System.nanoTime();
+        boolean submitted = pool.submit(owner, () -> {
+            if (completable.isDone()) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            pool.waitTimer.record(Duration.ofNanos(startTime - queuedTime));
+            try {
+                completable.complete(executor.execute(pooledCommandLine));
+            } catch (ExecuteException e) {
+                log.error("Error executing command", e);
+                completable.complete(e.getExitValue());
+            } catch (Exception e) {
+                log.error("Error executing command", e);
+                completable.completeExceptionally(e);
+            } finally {
+                pool.runTimer.record(Duration.ofNanos(System.nanoTime() - startTime));
+            }
+        });
+        if (!submitted) {
+            log.warn("Process pool {} is full, rejecting command of {}", pool.priority, owner);
+            return CompletableFuture.completedFuture(-1);
+        }
+        return completable
                 .orTimeout(execTimeout.toMillis() + TIMEOUT_BUFFER_MS, TimeUnit.MILLISECONDS)
                 .exceptionally(ex -> {
                     watchdog.destroyProcess();
@@ -73,9 +122,98 @@ private static CompletableFuture<Integer> exec(CommandLine commandLine, OutputSt
                 });
     }
 
+    /**
+     * interactive processes answer a waiting request, background ones run at a lower CPU priority
+     */
+    public enum Priority {
+        interactive(0),
+        background(10);
+
+        private final int niceness;
+
+        Priority(int niceness) {
+            this.niceness = niceness;
+        }
+    }
+
     public record ExecResult(boolean success, List<String> stdout, List<String> stderr) implements Serializable {
     }
 
+    /**
+     * Runs at most permits processes at a time, waiting tasks are kept in one queue per owner
+     */
+    private static final class ProcessPool {
+
+        private final Priority priority;
+        private final int permits;
+        private final int maxQueued;
+        private final Map<String, ArrayDeque<Runnable>> ownerQueueMap = new LinkedHashMap<>();
+        private final Timer waitTimer;
+        private final Timer runTimer;
+        private int running;
+        private int queued;
+
+        private ProcessPool(Priority priority, int permits) {
+            this.priority = priority;
+            this.permits = permits;
+            this.maxQueued = permits * MAX_QUEUED_PER_PERMIT;
+            MeterRegistry registry = Metrics.globalRegistry;
+            this.waitTimer = Timer.builder("file_fusion.exec.wait")
+                    .description("Time a process waited for a free slot")
+                    .tags("pool", priority.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.runTimer = Timer.builder("file_fusion.exec.runtime")
+                    .description("Time a process ran")
+                    .tags("pool", priority.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            Gauge.builder("file_fusion.exec.queued", this, pool -> pool.queued).tags("pool", priority.name()).register(registry);
+            Gauge.builder("file_fusion.exec.running", this, pool -> pool.running).tags("pool", priority.name()).register(registry);
+        }
+
+        private synchronized boolean submit(String owner, Runnable task) {
+            if (running < permits) {
+                running++;
+                start(task);
+                return true;
+            }
+            if (queued >= maxQueued) {
+                return false;
+            }
+            ownerQueueMap.computeIfAbsent(owner == null ? "" : owner, key -> new ArrayDeque<>()).offer(task);
+            queued++;
+            return true;
+        }
+
+        private void start(Runnable task) {
+            EXECUTOR.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+        private synchronized void release() {
+            Iterator<Map.Entry<String, ArrayDeque<Runnable>>> iterator = ownerQueueMap.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                running--;
+                return;
+            }
+            Map.Entry<String, ArrayDeque<Runnable>> entry = iterator.next();
+            iterator.remove();
+            Runnable task = entry.getValue().poll();
+            if (!entry.getValue().isEmpty()) {
+                ownerQueueMap.put(entry.getKey(), entry.getValue());
+            }
+            queued--;
+            start(task);
+        }
+
+    }
+
     private static class CollectingLogOutputStream extends LogOutputStream {
         private final ConcurrentLinkedQueue<String> queue;
 
@@ -0,0 +1,370 @@
+package com.github.filefusion.util;
+
+import com.github.filefusion.constant.RedisAttribute;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.*;
+import org.redisson.client.codec.StringCodec;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JobQueue
+ * <p>
+ * A job stays in the in-flight list under a lease until it is acknowledged, so a crashed worker loses nothing.
+ * Jobs are deduplicated by key, failures are retried with backoff and then moved to the dead letters.
+ * Every owner has its own queue and workers take from the owners in turn, so one owner cannot hold back the others.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+@Slf4j
+public class JobQueue<T extends Serializable> {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofHours(2);
+    private static final Duration DEAD_LETTER_TIMEOUT = Duration.ofDays(1);
+    private static final long POLL_TIMEOUT_SECONDS = 5;
+    private static final long RETRY_CHECK_INTERVAL_MS = 1000L;
+    private static final int MAX_SIGNALS = 64;
+    private static final Duration SUSPECT_TIMEOUT = Duration.ofHours(1);
+    private static final String LEASE_EXPIRED = "Lease expired";
+    private static final String ENQUEUE_SCRIPT = """
+            redis.call('lpush', KEYS[2], ARGV[1]);
+            if redis.call('llen', KEYS[2]) == 1 then
+                redis.call('rpush', KEYS[1], ARGV[2]);
+            end;
+            redis.call('lpush', KEYS[3], '1');
+            redis.call('ltrim', KEYS[3], 0, tonumber(ARGV[3]) - 1);
+            return 1;
+            """;
+    private static final String DEQUEUE_SCRIPT = """
+            local owner = redis.call('lpop', KEYS[1]);
+            while owner do
+                local ownerQueue = ARGV[1] .. owner;
+                local key = redis.call('rpop', ownerQueue);
+                if key then
+                    redis.call('lpush', KEYS[2], key);
+                    if redis.call('llen', ownerQueue) > 0 then
+                        redis.call('rpush', KEYS[1], owner);
+                    end;
+                    return key;
+                end;
+                owner = redis.call('lpop', KEYS[1]);
+            end;
+            return false;
+            """;
+
+    private final String name;
+    private final String prefix;
+    private final Duration visibilityTimeout;
+    private final Duration retryBackoff;
+    private final Handler<T> handler;
+    private final RedissonClient redissonClient;
+    private final RScript script;
+    private final RDeque<String> ownerQueue;
+    private final RBlockingQueue<String> signalQueue;
+    private final RDeque<String> inFlightQueue;
+    private final RScoredSortedSet<String> retrySet;
+    private final RMap<String, Job<T>> jobMap;
+    private final RMapCache<String, Job<T>> deadLetterMap;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong retryCheckTime = new AtomicLong();
+    private final RSet<String> expiredSuspectSet;
+    private final RSet<String> orphanSuspectSet;
+    private final Counter completedCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetterCounter;
+    private final Timer processTimer;
+
+    public JobQueue(RedissonClient redissonClient, MeterRegistry meterRegistry, String name,
+                    Duration visibilityTimeout, Duration retryBackoff, Handler<T> handler) {
+        this.name = name;
+        this.prefix = RedisAttribute.JOB_PREFIX + "{" + name + "}" + RedisAttribute.SEPARATOR;
+        this.visibilityTimeout = visibilityTimeout;
+        this.retryBackoff = retryBackoff;
+        this.handler = handler;
+        this.redissonClient = redissonClient;
+        this.script = redissonClient.getScript(StringCodec.INSTANCE);
+        this.ownerQueue = redissonClient.getDeque(prefix + "owners", StringCodec.INSTANCE);
+        this.signalQueue = redissonClient.getBlockingQueue(prefix + "signal", StringCodec.INSTANCE);
+        this.inFlightQueue = redissonClient.getDeque(prefix + "in_flight", StringCodec.INSTANCE);
+        this.retrySet = redissonClient.getScoredSortedSet(prefix + "retry", StringCodec.INSTANCE);
+        this.jobMap = redissonClient.getMap(prefix + "jobs");
+        this.deadLetterMap = redissonClient.getMapCache(prefix + "dead_letter");
+        this.expiredSuspectSet = redissonClient.getSet(prefix + "expired_suspect", StringCodec.INSTANCE);
+        this.orphanSuspectSet = redissonClient.getSet(prefix + "orphan_suspect", StringCodec.INSTANCE);
+        this.completedCounter = Counter.builder("file_fusion.job.completed").tags("queue", name).register(meterRegistry);
+        this.retriedCounter = Counter.builder("file_fusion.job.retried").tags("queue", name).register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("file_fusion.job.dead_letter").tags("queue", name).register(meterRegistry);
+        this.processTimer = Timer.builder("file_fusion.job.process")
+                .description("Time spent processing a job")
+                .tags("queue", name)
+                .register(meterRegistry);
+        Gauge.builder("file_fusion.job.depth", this, JobQueue::queuedSize).tags("queue", name, "state", "queued").register(meterRegistry);
+        Gauge.builder("file_fusion.job.owners", ownerQueue, RDeque::size).tags("queue", name).register(meterRegistry);
+        Gauge.builder("file_fusion.job.depth", inFlightQueue, RDeque::size).tags("queue", name, "state", "in_flight").register(meterRegistry);
+        Gauge.builder("file_fusion.job.depth", retrySet, RScoredSortedSet::size).tags("queue", name, "state", "retry").register(meterRegistry);
+        Gauge.builder("file_fusion.job.depth", deadLetterMap, RMapCache::size).tags("queue", name, "state", "dead_letter").register(meterRegistry);
+    }
+
+    private long retryDelayMillis(int attempts) {
+        long delay = retryBackoff.toMillis() << Math.min(attempts - 1, 20);
+        return Math.min(delay, MAX_RETRY_BACKOFF.toMillis());
+    }
+
+    private int queuedSize() {
+        return Math.max(0, jobMap.size() - inFlightQueue.size() - retrySet.size());
+    }
+
+    private String ownerQueueName(String owner) {
+        return prefix + "queue" + RedisAttribute.SEPARATOR + owner;
+    }
+
+    private void enqueue(String key, String owner) {
+        owner = owner == null ? "" : owner;
+        script.eval(RScript.Mode.READ_WRITE, ENQUEUE_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(ownerQueue.getName(), ownerQueueName(owner), signalQueue.getName()),
+                key, owner, String.valueOf(MAX_SIGNALS));
+    }
+
+    private String dequeue() {
+        return script.eval(RScript.Mode.READ_WRITE, DEQUEUE_SCRIPT, RScript.ReturnType.VALUE,
+                List.of(ownerQueue.getName(), inFlightQueue.getName()), ownerQueueName(""));
+    }
+
+    /**
+     * submit a job, ignored while a job with the same key is pending
+     *
+     * @param key     key
+     * @param owner   owner
+     * @param payload payload
+     * @return whether the job was queued
+     */
+    public boolean submit(String key, String owner, T payload) {
+        Job<T> job = new Job<>();
+        job.setOwner(owner);
+        job.setPayload(payload);
+        if (!jobMap.fastPutIfAbsent(key, job)) {
+            return false;
+        }
+        try {
+            enqueue(key, job.getOwner());
+        } catch (RuntimeException e) {
+            jobMap.fastRemove(key);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * whether the job failed every attempt, dead letters expire so the job can be submitted again later
+     *
+     * @param key key
+     * @return whether the job is dead
+     */
+    public boolean isDead(String key) {
+        return deadLetterMap.containsKey(key);
+    }
+
+    public void start(int workers) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Job queue {} is already running", name);
+            return;
+        }
+        log.info("Starting job queue {} with {} workers", name, workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+        executor.shutdownNow();
+        log.info("Stopping job queue {}", name);
+    }
+
+    /**
+     * queue the retries that are due, the in-flight jobs whose lease expired and the jobs that are in no list,
+     * which a node leaves behind when it stops between storing a job and queuing it
+     * <p>
+     * a job must be seen in that state on two runs in a row, since a worker sets the lease just after taking
+     * the job and a submit queues it just after storing it, the previous run is kept in Redis as any node may recover
+     */
+    public void recover() {
+        requeueDueRetries();
+        Set<String> expiredKeySet = new HashSet<>();
+        for (String key : inFlightQueue.readAll()) {
+            if (!leaseBucket(key).isExists()) {
+                expiredKeySet.add(key);
+            }
+        }
+        for (String key : confirmSuspects(expiredSuspectSet, expiredKeySet)) {
+            if (inFlightQueue.remove(key)) {
+                Job<T> job = jobMap.get(key);
+                if (job != null) {
+                    log.warn("Job {} of queue {} lease expired", key, name);
+                    fail(key, job, LEASE_EXPIRED);
+                }
+            }
+        }
+        Set<String> orphanKeySet = new HashSet<>(jobMap.readAllKeySet());
+        for (String owner : ownerQueue.readAll()) {
+            orphanKeySet.removeAll(redissonClient.<String>getDeque(ownerQueueName(owner), StringCodec.INSTANCE).readAll());
+        }
+        orphanKeySet.removeAll(inFlightQueue.readAll());
+        orphanKeySet.removeAll(retrySet.readAll());
+        for (String key : confirmSuspects(orphanSuspectSet, orphanKeySet)) {
+            Job<T> job = jobMap.get(key);
+            if (job != null) {
+                log.warn("Job {} of queue {} is in no list, queuing it again", key, name);
+                enqueue(key, job.getOwner());
+            }
+        }
+    }
+
+    private void requeueDueRetries() {
+        Collection<String> dueKeys = retrySet.valueRange(Double.NEGATIVE_INFINITY, true, System.currentTimeMillis(), true);
+        for (String key : dueKeys) {
+            if (retrySet.remove(key)) {
+                Job<T> job = jobMap.get(key);
+                if (job != null) {
+                    enqueue(key, job.getOwner());
+                }
+            }
+        }
+    }
+
+    private void requeueDueRetriesThrottled() {
+        long now = System.currentTimeMillis();
+        long lastCheckTime = retryCheckTime.get();
+        if (now - lastCheckTime >= RETRY_CHECK_INTERVAL_MS && retryCheckTime.compareAndSet(lastCheckTime, now)) {
+            requeueDueRetries();
+        }
+    }
+
+    private Set<String> confirmSuspects(RSet<String> suspectSet, Set<String> keySet) {
+        Set<String> confirmedKeySet = new HashSet<>(suspectSet.readAll());
+        confirmedKeySet.retainAll(keySet);
+        suspectSet.delete();
+        Set<String> newSuspectSet = new HashSet<>(keySet);
+        newSuspectSet.removeAll(confirmedKeySet);
+        if (!newSuspectSet.isEmpty()) {
+            suspectSet.addAll(newSuspectSet);
+            suspectSet.expire(SUSPECT_TIMEOUT);
+        }
+        return confirmedKeySet;
+    }
+
+    private RBucket<String> leaseBucket(String key) {
+        return redissonClient.getBucket(prefix + "lease" + RedisAttribute.SEPARATOR + key, StringCodec.INSTANCE);
+    }
+
+    private void work() {
+        while (running.get()) {
+            try {
+                requeueDueRetriesThrottled();
+                String key = dequeue();
+                if (key != null) {
+                    process(key);
+                } else {
+                    signalQueue.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Job queue {} worker failed", name, e);
+            }
+        }
+    }
+
+    private void process(String key) throws InterruptedException {
+        RBucket<String> lease = leaseBucket(key);
+        lease.set(Thread.currentThread().toString(), visibilityTimeout);
+        try {
+            Job<T> job = jobMap.get(key);
+            if (job == null) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            try {
+                handler.handle(job.getPayload());
+                jobMap.fastRemove(key);
+                completedCounter.increment();
+            } catch (InterruptedException e) {
+                enqueue(key, job.getOwner());
+                throw e;
+            } catch (Exception e) {
+                log.error("Job {} of queue {} failed", key, name, e);
+                fail(key, job, String.valueOf(e.getMessage()));
+            } finally {
+                processTimer.record(Duration.ofNanos(System.nanoTime() - startTime));
+            }
+        } finally {
+            inFlightQueue.remove(key);
+            lease.delete();
+        }
+    }
+
+    private void fail(String key, Job<T> job, String error) {
+        job.setAttempts(job.getAttempts() + 1);
+        job.setLastError(error);
+        if (job.getAttempts() >= MAX_ATTEMPTS) {
+            deadLetterMap.fastPut(key, job, DEAD_LETTER_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            jobMap.fastRemove(key);
+            deadLetterCounter.increment();
+            log.error("Job {} of queue {} moved to dead letters after {} attempts", key, name, job.getAttempts());
+            return;
+        }
+        jobMap.fastPut(key, job);
+        retrySet.add(System.currentTimeMillis() + retryDelayMillis(job.getAttempts()), key);
+        retriedCounter.increment();
+    }
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(T payload) throws Exception;
+    }
+
+    @Data
+    public static class Job<T> implements Serializable {
+
+        /**
+         * owner
+         */
+        private String owner;
+
+        /**
+         * payload
+         */
+        private T payload;
+
+        /**
+         * attempts
+         */
+        private int attempts;
+
+        /**
+         * last error
+         */
+        private String lastError;
+
+    }
+
+}
@@ -0,0 +1,331 @@
+package com.github.filefusion.util.file;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Blake3Tree
+ * <p>
+ * BLAKE3 exposing the chaining values of aligned subtrees, so that the digest of a file can be
+ * assembled from the subtrees of its parts without reading them again.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public final class Blake3Tree {
+
+    public static final int CHUNK_LEN = 1024;
+    public static final int OUT_LEN = 32;
+
+    private static final int BLOCK_LEN = 64;
+    private static final int MAX_DEPTH = 54;
+    private static final int CHUNK_START = 1;
+    private static final int CHUNK_END = 1 << 1;
+    private static final int PARENT = 1 << 2;
+    private static final int ROOT = 1 << 3;
+    private static final int[] IV = {
+            0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19
+    };
+    private static final int[] MSG_PERMUTATION = {2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8};
+
+    private static void g(int[] state, int a, int b, int c, int d, int mx, int my) {
+        state[a] = state[a] + state[b] + mx;
+        state[d] = Integer.rotateRight(state[d] ^ state[a], 16);
+        state[c] = state[c] + state[d];
+        state[b] = Integer.rotateRight(state[b] ^ state[c], 12);
+        state[a] = state[a] + state[b] + my;
+        state[d] = Integer.rotateRight(state[d] ^ state[a], 8);
+        state[c] = state[c] + state[d];
+        state[b] = Integer.rotateRight(state[b] ^ state[c], 7);
+    }
+
+    private static int[] compress(int[] cv, int[] blockWords, long counter, int blockLen, int flags) {
+        int[] state = {
+                cv[0], cv[1], cv[2], cv[3], cv[4], cv[5], cv[6], cv[7],
+                IV[0], IV[1], IV[2], IV[3], (int) counter, (int) (counter >>> 32), blockLen, flags
+        };
+        int[] m = blockWords.clone();
+        int[] permuted = new int[16];
+        for (int round = 0; round < 7; round++) {
+            g(state, 0, 4, 8, 12, m[0], m[1]);
+            g(state, 1, 5, 9, 13, m[2], m[3]);
+            g(state, 2, 6, 10, 14, m[4], m[5]);
+            g(state, 3, 7, 11, 15, m[6], m[7]);
+            g(state, 0, 5, 10, 15, m[8], m[9]);
+            g(state, 1, 6, 11, 12, m[10], m[11]);
+            g(state, 2, 7, 8, 13, m[12], m[13]);
+            g(state, 3, 4, 9, 14, m[14], m[15]);
+            if (round < 6) {
+                for (int i = 0; i < 16; i++) {
+                    permuted[i] = m[MSG_PERMUTATION[i]];
+                }
+                System.arraycopy(permuted, 0, m, 0, 16);
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            state[i] ^= state[i + 8];
+            state[i + 8] ^= cv[i];
+        }
+        return state;
+    }
+
+    private static int[] parentBlockWords(int[] leftCv, int[] rightCv) {
+        int[] blockWords = new int[16];
+        System.arraycopy(leftCv, 0, blockWords, 0, 8);
+        System.arraycopy(rightCv, 0, blockWords, 8, 8);
+        return blockWords;
+    }
+
+    private static int[] parentCv(int[] leftCv, int[] rightCv) {
+        return Arrays.copyOf(compress(IV, parentBlockWords(leftCv, rightCv), 0, BLOCK_LEN, PARENT), 8);
+    }
+
+    private static byte[] wordsToBytes(int[] words) {
+        byte[] bytes = new byte[OUT_LEN];
+        for (int i = 0; i < 8; i++) {
+            bytes[i * 4] = (byte) words[i];
+            bytes[i * 4 + 1] = (byte) (words[i] >>> 8);
+            bytes[i * 4 + 2] = (byte) (words[i] >>> 16);
+            bytes[i * 4 + 3] = (byte) (words[i] >>> 24);
+        }
+        return bytes;
+    }
+
+    private static int[] bytesToWords(byte[] bytes) {
+        int[] words = new int[8];
+        for (int i = 0; i < 8; i++) {
+            words[i] = (bytes[i * 4] & 0xFF) | (bytes[i * 4 + 1] & 0xFF) << 8
+                    | (bytes[i * 4 + 2] & 0xFF) << 16 | (bytes[i * 4 + 3] & 0xFF) << 24;
+        }
+        return words;
+    }
+
+    /**
+     * the chaining value of an aligned subtree of chunkCount chunks, chunkCount is a power of two
+     *
+     * @param chunkCount    chunk count
+     * @param chainingValue chaining value
+     */
+    public record Subtree(long chunkCount, byte[] chainingValue) {
+    }
+
+    /**
+     * Output of a node before it is known whether it is the root
+     */
+    private record Output(int[] inputCv, int[] blockWords, long counter, int blockLen, int flags) {
+
+        private int[] chainingValue() {
+            return Arrays.copyOf(compress(inputCv, blockWords, counter, blockLen, flags), 8);
+        }
+
+        private byte[] rootBytes() {
+            return wordsToBytes(compress(inputCv, blockWords, 0, blockLen, flags | ROOT));
+        }
+
+    }
+
+    /**
+     * State of the chunk currently being hashed
+     */
+    private static final class ChunkState {
+
+        private final long chunkCounter;
+        private final byte[] block = new byte[BLOCK_LEN];
+        private int[] cv = IV;
+        private int blockLen = 0;
+        private int blocksCompressed = 0;
+
+        private ChunkState(long chunkCounter) {
+            this.chunkCounter = chunkCounter;
+        }
+
+        private int len() {
+            return BLOCK_LEN * blocksCompressed + blockLen;
+        }
+
+        private int startFlag() {
+            return blocksCompressed == 0 ? CHUNK_START : 0;
+        }
+
+        private int[] blockWords() {
+            int[] blockWords = new int[16];
+            for (int i = 0; i < 16; i++) {
+                blockWords[i] = (block[i * 4] & 0xFF) | (block[i * 4 + 1] & 0xFF) << 8
+                        | (block[i * 4 + 2] & 0xFF) << 16 | (block[i * 4 + 3] & 0xFF) << 24;
+            }
+            return blockWords;
+        }
+
+        private int update(byte[] input, int offset, int length) {
+            int consumed = 0;
+            while (consumed < length && len() < CHUNK_LEN) {
+                if (blockLen == BLOCK_LEN) {
+                    cv = Arrays.copyOf(compress(cv, blockWords(), chunkCounter, BLOCK_LEN, startFlag()), 8);
+                    blocksCompressed++;
+                    Arrays.fill(block, (byte) 0);
+                    blockLen = 0;
+                }
+                int take = Math.min(BLOCK_LEN - blockLen, length - consumed);
+                System.arraycopy(input, offset + consumed, block, blockLen, take);
+                blockLen += take;
+                consumed += take;
+            }
+            return consumed;
+        }
+
+        private Output output() {
+            return new Output(cv, blockWords(), chunkCounter, blockLen, startFlag() | CHUNK_END);
+        }
+
+    }
+
+    /**
+     * Incremental hasher starting at a chunk offset, aligned subtrees can be added in place of their data
+     */
+    public static final class Hasher {
+
+        private final int[][] cvStack = new int[MAX_DEPTH][];
+        private final long startChunk;
+        private int cvStackLen = 0;
+        private long chunkCount = 0;
+        private ChunkState chunkState;
+
+        public Hasher() {
+            this(0);
+        }
+
+        public Hasher(long startChunk) {
+            this.startChunk = startChunk;
+            this.chunkState = new ChunkState(startChunk);
+        }
+
+        private void pushCv(int[] cv, long totalChunks, int height) {
+            long units = totalChunks >>> height;
+            while ((units & 1) == 0) {
+                cv = parentCv(cvStack[--cvStackLen], cv);
+                units >>>= 1;
+            }
+            cvStack[cvStackLen++] = cv;
+        }
+
+        /**
+         * add a subtree in place of its chunks, the hasher must be at a chunk boundary aligned to the subtree
+         *
+         * @param subtree subtree
+         */
+        public void addSubtree(Subtree subtree) {
+            long subtreeChunkCount = subtree.chunkCount();
+            if (chunkState.len() > 0 || Long.bitCount(subtreeChunkCount) != 1
+                    || (startChunk + chunkCount) % subtreeChunkCount != 0) {
+                throw new IllegalStateException("Subtree is not aligned");
+            }
+            chunkCount += subtreeChunkCount;
+            pushCv(bytesToWords(subtree.chainingValue()), chunkCount, Long.numberOfTrailingZeros(subtreeChunkCount));
+            chunkState = new ChunkState(startChunk + chunkCount);
+        }
+
+        public void update(byte[] input, int offset, int length) {
+            while (length > 0) {
+                if (chunkState.len() == CHUNK_LEN) {
+                    chunkCount++;
+                    pushCv(chunkState.output().chainingValue(), chunkCount, 0);
+                    chunkState = new ChunkState(startChunk + chunkCount);
+                }
+                int consumed = chunkState.update(input, offset, length);
+                offset += consumed;
+                length -= consumed;
+            }
+        }
+
+        private Output finalOutput() {
+            Output output = chunkState.output();
+            for (int i = cvStackLen - 1; i >= 0; i--) {
+                output = new Output(IV, parentBlockWords(cvStack[i], output.chainingValue()), 0, BLOCK_LEN, PARENT);
+            }
+            return output;
+        }
+
+        /**
+         * digest of everything added, as the root of the tree
+         *
+         * @return digest
+         */
+        public byte[] digest() {
+            return finalOutput().rootBytes();
+        }
+
+        /**
+         * chaining value of everything added, as a subtree, only valid for a power of two complete chunks
+         *
+         * @return chaining value
+         */
+        public byte[] chainingValue() {
+            return wordsToBytes(finalOutput().chainingValue());
+        }
+
+    }
+
+    /**
+     * Splits a run of complete chunks into the largest aligned subtrees and hashes each of them
+     */
+    public static final class SubtreeHasher {
+
+        private final List<Subtree> subtreeList = new ArrayList<>();
+        private final long endChunk;
+        private long nextChunk;
+        private long currentChunkCount;
+        private long currentRemaining;
+        private Hasher current;
+
+        public SubtreeHasher(long startChunk, long chunkCount) {
+            this.nextChunk = startChunk;
+            this.endChunk = startChunk + chunkCount;
+        }
+
+        private void next() {
+            long size = nextChunk == 0 ? Long.highestOneBit(endChunk) : Long.lowestOneBit(nextChunk);
+            while (nextChunk + size > endChunk) {
+                size >>>= 1;
+            }
+            current = new Hasher(nextChunk);
+            currentChunkCount = size;
+            currentRemaining = size * CHUNK_LEN;
+            nextChunk += size;
+        }
+
+        public void update(byte[] input, int offset, int length) {
+            while (length > 0) {
+                if (current == null) {
+                    if (nextChunk >= endChunk) {
+                        throw new IllegalStateException("Input exceeds chunk count");
+                    }
+                    next();
+                }
+                int take = (int) Math.min(length, currentRemaining);
+                current.update(input, offset, take);
+                currentRemaining -= take;
+                offset += take;
+                length -= take;
+                if (currentRemaining == 0) {
+                    subtreeList.add(new Subtree(currentChunkCount, current.chainingValue()));
+                    current = null;
+                }
+            }
+        }
+
+        /**
+         * subtrees covering the chunks, null when the input did not fill all chunks
+         *
+         * @return subtree list
+         */
+        public List<Subtree> subtrees() {
+            if (current != null || nextChunk != endChunk) {
+                return null;
+            }
+            return subtreeList;
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.github.filefusion.util.file;
+
+import com.github.filefusion.file.model.DownloadFileModel;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * DownloadManifest
+ * <p>
+ * Binary, deflated encoding of the files behind a download id, small enough to keep in a single Redis value.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public final class DownloadManifest {
+
+    private static final int VERSION = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value == null ? "" : value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        String value = in.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeHash(DataOutputStream out, String hashValue) throws IOException {
+        byte[] hash = hashValue == null ? new byte[0] : HEX.parseHex(hashValue);
+        out.writeByte(hash.length);
+        out.write(hash);
+    }
+
+    private static String readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        return hash.length == 0 ? null : HEX.formatHex(hash);
+    }
+
+    public static byte[] encode(List<DownloadFileModel> fileList) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater)))) {
+            out.writeByte(VERSION);
+            out.writeInt(fileList.size());
+            for (DownloadFileModel file : fileList) {
+                writeString(out, file.getId());
+                writeString(out, file.getParentId());
+                writeString(out, file.getName());
+                writeHash(out, file.getHashValue());
+                writeString(out, file.getMimeType());
+                out.writeLong(file.getSize());
+                out.writeLong(file.getLastModifiedDate() == null ? NO_DATE
+                        : file.getLastModifiedDate().toEpochSecond(ZoneOffset.UTC));
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<DownloadFileModel> decode(byte[] manifest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(manifest))))) {
+            if (in.readUnsignedByte() != VERSION) {
+                throw new IOException("Unsupported download manifest version");
+            }
+            int count = in.readInt();
+            List<DownloadFileModel> fileList = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                DownloadFileModel file = new DownloadFileModel();
+                file.setId(readString(in));
+                file.setParentId(readString(in));
+                file.setName(readString(in));
+                file.setHashValue(readHash(in));
+                file.setMimeType(readString(in));
+                file.setSize(in.readLong());
+                long lastModifiedDate = in.readLong();
+                file.setLastModifiedDate(lastModifiedDate == NO_DATE ? null
+                        : LocalDateTime.ofEpochSecond(lastModifiedDate, 0, ZoneOffset.UTC));
+                fileList.add(file);
+            }
+            return fileList;
+        }
+    }
+
+}
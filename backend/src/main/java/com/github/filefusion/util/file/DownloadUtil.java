@@ -1,23 +1,38 @@
 package com.github.filefusion.util.file;
 
 import com.github.filefusion.constant.FileAttribute;
-import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.model.DownloadFileModel;
+import io.undertow.io.BufferWritableOutputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
 import org.springframework.http.*;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * DownloadUtil
@@ -27,7 +42,23 @@
  */
 public final class DownloadUtil {
 
-    private static String buildZipPath(FileData file, Map<String, FileData> idToFileMap) {
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String ETAG_WILDCARD = "*";
+    private static final LocalDateTime ZIP_EPOCH = LocalDateTime.of(1980, 1, 1, 0, 0);
+    private static final MediaType MULTIPART_BYTERANGES = MediaType.valueOf("multipart/byteranges");
+    private static final List<String> INCOMPRESSIBLE_MIME_TYPE_PREFIX = List.of("image/", "video/", "audio/");
+    private static final Set<String> COMPRESSIBLE_MEDIA_MIME_TYPE = Set.of(
+            "image/svg+xml", "image/bmp", "image/x-ms-bmp", "image/tiff", "image/x-icon", "image/vnd.microsoft.icon",
+            "audio/wav", "audio/x-wav");
+    private static final Set<String> INCOMPRESSIBLE_MIME_TYPE = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/zstd", "application/x-7z-compressed", "application/vnd.rar", "application/x-rar-compressed",
+            "application/java-archive", "application/epub+zip",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+
+    private static String buildZipPath(DownloadFileModel file, Map<String, DownloadFileModel> idToFileMap) {
         Deque<String> pathSegments = new ArrayDeque<>();
         while (file != null && !FileAttribute.PARENT_ROOT.equals(file.getParentId())) {
             pathSegments.addFirst(file.getName());
@@ -39,58 +70,302 @@ private static String buildZipPath(FileData file, Map<String, FileData> idToFile
         return String.join(FileAttribute.SEPARATOR, pathSegments);
     }
 
-    public static ResponseEntity<StreamingResponseBody> download(String name, String mimeType, Path path) {
-        return downloadResponse(name, MediaType.valueOf(mimeType),
-                HttpStatus.OK,
-                out -> {
-                    try (out; WritableByteChannel channel = Channels.newChannel(out)) {
-                        FileUtil.transferTo(path, channel);
-                    }
-                },
-                new HttpHeaders());
+    private static String quoteETag(String eTag) {
+        return "\"" + eTag + "\"";
+    }
+
+    private static String unquoteETag(String eTag) {
+        eTag = eTag.trim();
+        if (eTag.startsWith(WEAK_ETAG_PREFIX)) {
+            eTag = eTag.substring(WEAK_ETAG_PREFIX.length());
+        }
+        return eTag;
+    }
+
+    /**
+     * whether If-None-Match matches the entity tag, compared weakly, needs no disk access
+     *
+     * @param eTag           entity tag without quotes
+     * @param requestHeaders request headers
+     * @return whether matches
+     */
+    public static boolean isNotModified(String eTag, HttpHeaders requestHeaders) {
+        String quotedETag = quoteETag(eTag);
+        for (String ifNoneMatch : requestHeaders.getOrEmpty(HttpHeaders.IF_NONE_MATCH)) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = unquoteETag(candidate);
+                if (ETAG_WILDCARD.equals(value) || quotedETag.equals(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static ResponseEntity<StreamingResponseBody> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(quoteETag(eTag))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .build();
+    }
+
+    private static boolean isNotModifiedSince(long lastModified, HttpHeaders requestHeaders) {
+        if (lastModified < 0 || requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
     }
 
-    public static ResponseEntity<StreamingResponseBody> downloadChunked(
-            String name, String mimeType, Path path, long start, long end, long size) {
+    private static boolean isRangeApplicable(String eTag, long lastModified, HttpHeaders requestHeaders) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith(WEAK_ETAG_PREFIX)) {
+            return quoteETag(eTag).equals(ifRange);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+        try {
+            return ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static List<long[]> parseRanges(String range, long size) {
+        List<HttpRange> httpRangeList = HttpRange.parseRanges(range);
+        List<long[]> rangeList = new ArrayList<>(httpRangeList.size());
+        long total = 0;
+        for (HttpRange httpRange : httpRangeList) {
+            long start = httpRange.getRangeStart(size);
+            long end = httpRange.getRangeEnd(size);
+            if (start >= size || start > end) {
+                throw new IllegalArgumentException("Range not satisfiable");
+            }
+            total += end - start + 1;
+            rangeList.add(new long[]{start, end});
+        }
+        if (rangeList.size() > 1 && total > size) {
+            throw new IllegalArgumentException("Overlapping ranges exceed the file size");
+        }
+        return rangeList;
+    }
+
+    private static String contentRange(long start, long end, long size) {
+        return String.format("bytes %d-%d/%d", start, end, size);
+    }
+
+    private static boolean isHeadRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                && HttpMethod.HEAD.matches(attributes.getRequest().getMethod());
+    }
+
+    private static ServletResponse nativeResponse() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+        ServletResponse response = attributes.getResponse();
+        while (response instanceof ServletResponseWrapper wrapper) {
+            response = wrapper.getResponse();
+        }
+        return response;
+    }
+
+    /**
+     * the security filters wrap the response stream, so the file goes to the container stream underneath
+     * once everything written before has been flushed through the wrappers
+     */
+    private static void transferTo(Path path, OutputStream out, ServletResponse nativeResponse, long start, long end)
+            throws IOException {
+        if (nativeResponse != null && nativeResponse.getOutputStream() instanceof BufferWritableOutputStream nativeOut) {
+            out.flush();
+            FileUtil.transferTo(path, nativeOut, start, end);
+        } else {
+            FileUtil.transferTo(path, Channels.newChannel(out), start, end);
+        }
+    }
+
+    /**
+     * download a file whose content never changes for an entity tag,
+     * answering conditional requests and single, suffix and multiple byte ranges
+     *
+     * @param name           file name
+     * @param mimeType       mime type
+     * @param path           file path
+     * @param eTag           strong entity tag without quotes
+     * @param requestHeaders request headers
+     * @return response
+     * @throws IOException file is not readable
+     */
+    public static ResponseEntity<StreamingResponseBody> download(String name, String mimeType, Path path,
+                                                                 String eTag, HttpHeaders requestHeaders) throws IOException {
+        if (isNotModified(eTag, requestHeaders)) {
+            return notModified(eTag);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        ServletResponse nativeResponse = nativeResponse();
+        return download(name, MediaType.valueOf(mimeType), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                eTag, requestHeaders, (out, start, end) -> transferTo(path, out, nativeResponse, start, end));
+    }
+
+    /**
+     * answer conditional and range requests for content of a known size
+     *
+     * @param name           file name
+     * @param mediaType      media type
+     * @param size           content size
+     * @param lastModified   last modified millis, negative when unknown
+     * @param eTag           strong entity tag without quotes
+     * @param requestHeaders request headers
+     * @param rangeWriter    writes a range of the content
+     * @return response
+     */
+    private static ResponseEntity<StreamingResponseBody> download(String name, MediaType mediaType, long size,
+                                                                  long lastModified, String eTag,
+                                                                  HttpHeaders requestHeaders, RangeWriter rangeWriter) {
         HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
-        headers.add(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, size));
-        headers.add(HttpHeaders.CONTENT_LENGTH, String.valueOf(end - start + 1));
-        return downloadResponse(name, MediaType.valueOf(mimeType),
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setETag(quoteETag(eTag));
+        if (lastModified >= 0) {
+            headers.setLastModified(lastModified);
+        }
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        if (isNotModifiedSince(lastModified, requestHeaders)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        String range = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (!StringUtils.hasText(range) || !isRangeApplicable(eTag, lastModified, requestHeaders)) {
+            headers.setContentLength(size);
+            return downloadResponse(name, mediaType, HttpStatus.OK,
+                    out -> {
+                        try (out) {
+                            rangeWriter.write(out, 0, size);
+                        }
+                    },
+                    headers);
+        }
+        List<long[]> rangeList;
+        try {
+            rangeList = parseRanges(range, size);
+        } catch (IllegalArgumentException e) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        if (rangeList.size() == 1) {
+            long start = rangeList.getFirst()[0];
+            long end = rangeList.getFirst()[1];
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(start, end, size));
+            headers.setContentLength(end - start + 1);
+            return downloadResponse(name, mediaType, HttpStatus.PARTIAL_CONTENT,
+                    out -> {
+                        try (out) {
+                            rangeWriter.write(out, start, end + 1);
+                        }
+                    },
+                    headers);
+        }
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaderList = new ArrayList<>(rangeList.size());
+        long contentLength = 0;
+        for (long[] partRange : rangeList) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n" +
+                    HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n" +
+                    HttpHeaders.CONTENT_RANGE + ": " + contentRange(partRange[0], partRange[1], size) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaderList.add(partHeader);
+            contentLength += partHeader.length + partRange[1] - partRange[0] + 1;
+        }
+        byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        headers.setContentLength(contentLength + closeDelimiter.length);
+        return downloadResponse(name, new MediaType(MULTIPART_BYTERANGES, Map.of("boundary", boundary)),
                 HttpStatus.PARTIAL_CONTENT,
                 out -> {
-                    try (out; WritableByteChannel channel = Channels.newChannel(out)) {
-                        FileUtil.transferTo(path, channel, start, end + 1);
+                    try (out) {
+                        for (int i = 0; i < rangeList.size(); i++) {
+                            out.write(partHeaderList.get(i));
+                            rangeWriter.write(out, rangeList.get(i)[0], rangeList.get(i)[1] + 1);
+                        }
+                        out.write(closeDelimiter);
                     }
                 },
                 headers);
     }
 
-    public static ResponseEntity<StreamingResponseBody> downloadZip(Path dir, List<FileData> fileList) {
+    private static ZipArchive.Entry zipEntry(Path dir, DownloadFileModel file, String zipPath) {
+        LocalDateTime lastModified = Objects.requireNonNullElse(file.getLastModifiedDate(), ZIP_EPOCH);
+        if (FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
+            return new ZipArchive.Entry(zipPath + FileAttribute.SEPARATOR, null, null, 0, lastModified, false);
+        }
+        return new ZipArchive.Entry(zipPath, file.getHashValue(), FileUtil.getHashPath(dir, file.getHashValue()),
+                file.getSize(), lastModified, isCompressible(file.getMimeType()));
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        if (!StringUtils.hasLength(mimeType) || COMPRESSIBLE_MEDIA_MIME_TYPE.contains(mimeType)) {
+            return true;
+        }
+        return INCOMPRESSIBLE_MIME_TYPE_PREFIX.stream().noneMatch(mimeType::startsWith)
+                && !INCOMPRESSIBLE_MIME_TYPE.contains(mimeType);
+    }
+
+    /**
+     * download files as a zip, crc32 already known for a hash value is not computed again,
+     * stored entries give an archive of fixed layout that answers range requests,
+     * compress chooses store or deflate per entry and streams an archive of unknown size
+     *
+     * @param dir            file dir
+     * @param fileList       file list, folders included
+     * @param compress       whether to deflate compressible entries
+     * @param eTag           strong entity tag of the file list without quotes
+     * @param requestHeaders request headers
+     * @param crcCache       known crc32 by hash value
+     * @param crcConsumer    receives every crc32 that had to be computed
+     * @return response
+     */
+    public static ResponseEntity<StreamingResponseBody> downloadZip(Path dir, List<DownloadFileModel> fileList, boolean compress,
+                                                                    String eTag, HttpHeaders requestHeaders,
+                                                                    Map<String, Long> crcCache,
+                                                                    BiConsumer<String, Long> crcConsumer) {
+        if (!compress && isNotModified(eTag, requestHeaders)) {
+            return notModified(eTag);
+        }
+        Map<String, DownloadFileModel> idToFileMap = fileList.stream()
+                .collect(Collectors.toMap(DownloadFileModel::getId, Function.identity()));
+        List<ZipArchive.Entry> entryList = new ArrayList<>(fileList.size());
+        for (DownloadFileModel file : fileList) {
+            if (FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
+                entryList.add(zipEntry(dir, file, buildZipPath(file, idToFileMap)));
+            }
+        }
+        for (DownloadFileModel file : fileList) {
+            if (!FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
+                entryList.add(zipEntry(dir, file, buildZipPath(file, idToFileMap)));
+            }
+        }
+        ZipArchive zip = new ZipArchive(entryList);
+        ServletResponse nativeResponse = nativeResponse();
+        if (!compress) {
+            return download(FileAttribute.DOWNLOAD_ZIP_NAME, FileAttribute.MimeType.ZIP.value(), zip.size(), -1,
+                    eTag, requestHeaders, (out, start, end) -> zip.write(out,
+                            (path, fileStart, fileEnd) -> transferTo(path, out, nativeResponse, fileStart, fileEnd),
+                            start, end, crcCache, crcConsumer));
+        }
         return downloadResponse(FileAttribute.DOWNLOAD_ZIP_NAME,
                 FileAttribute.MimeType.ZIP.value(),
                 HttpStatus.OK,
                 out -> {
-                    try (out; ZipOutputStream zos = new ZipOutputStream(out, StandardCharsets.UTF_8);
-                         WritableByteChannel outChannel = Channels.newChannel(zos)) {
-                        Map<String, FileData> idToFileMap = fileList.stream()
-                                .collect(Collectors.toMap(FileData::getId, Function.identity()));
-                        Map<String, String> idToZipPath = fileList.stream()
-                                .collect(Collectors.toMap(FileData::getId, file -> buildZipPath(file, idToFileMap)));
-                        zos.setLevel(Deflater.NO_COMPRESSION);
-                        for (FileData file : fileList) {
-                            if (FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
-                                zos.putNextEntry(new ZipEntry(idToZipPath.get(file.getId()) + FileAttribute.SEPARATOR));
-                                zos.closeEntry();
-                            }
-                        }
-                        for (FileData file : fileList) {
-                            if (!FileAttribute.MimeType.FOLDER.value().toString().equals(file.getMimeType())) {
-                                zos.putNextEntry(new ZipEntry(idToZipPath.get(file.getId())));
-                                FileUtil.transferTo(FileUtil.getHashPath(dir, file.getHashValue()), outChannel);
-                                zos.closeEntry();
-                            }
-                        }
+                    try (out) {
+                        zip.writeAdaptive(out, (path, start, end) -> transferTo(path, out, nativeResponse, start, end),
+                                crcCache, crcConsumer);
                     }
                 },
                 new HttpHeaders());
@@ -108,7 +383,17 @@ private static ResponseEntity<StreamingResponseBody> downloadResponse(String fil
                 .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
                 .headers(headers)
                 .contentType(mediaType)
-                .body(body);
+                .body(isHeadRequest() ? null : body);
+    }
+
+    /**
+     * writes a range of the content to the response
+     */
+    @FunctionalInterface
+    private interface RangeWriter {
+
+        void write(OutputStream out, long start, long end) throws IOException;
+
     }
 
 }
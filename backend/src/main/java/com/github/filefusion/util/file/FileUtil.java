@@ -1,19 +1,26 @@
 package com.github.filefusion.util.file;
 
 import com.github.filefusion.util.EncryptUtil;
+import io.undertow.io.BufferWritableOutputStream;
 import jakarta.annotation.Nonnull;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jcajce.provider.digest.Blake3;
 
-import java.io.IOException;
+import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +33,11 @@
 public final class FileUtil {
 
     private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int MERGE_BUFFER_COUNT = 4;
+    private static final long TRANSFER_MAP_SIZE = 16 * 1024 * 1024;
+    private static final String CHUNK_TREE_EXTENSION = ".tree";
+    private static final String CHUNK_PART_EXTENSION = ".part";
+    private static final Pattern CHUNK_NAME = Pattern.compile("\\d+");
 
     public static void transferTo(Path path, WritableByteChannel outChannel) throws IOException {
         transferTo(path, outChannel, 0, Long.MAX_VALUE);
@@ -57,6 +69,34 @@ public static void transferTo(Path path, WritableByteChannel outChannel, long st
         }
     }
 
+    /**
+     * transfer without copying through the heap, the file channel goes to sendfile when it reaches the end of the file,
+     * a bounded range is written as memory mapped direct buffers
+     *
+     * @param path  file path
+     * @param out   container output stream
+     * @param start start position
+     * @param end   end position, exclusive
+     * @throws IOException file is not readable or connection closed
+     */
+    public static void transferTo(Path path, BufferWritableOutputStream out, long start, long end) throws IOException {
+        try (FileChannel inChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long total = inChannel.size();
+            start = Math.min(Math.max(start, 0), total);
+            end = Math.min(end, total);
+            if (end == total) {
+                inChannel.position(start);
+                out.transferFrom(inChannel);
+                return;
+            }
+            while (start < end) {
+                long length = Math.min(end - start, TRANSFER_MAP_SIZE);
+                out.write(inChannel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                start += length;
+            }
+        }
+    }
+
     public static Path getHashPath(Path dir, String hash, String... extension) {
         String path = Paths.get(hash.substring(0, 2), hash.substring(2, 4), hash).toString();
         if (extension.length > 0) {
@@ -81,23 +121,233 @@ public static String calculateHash(Path path) {
         }
     }
 
-    public static void chunkMerge(Path chunkDirPath, Path targetPath) throws IOException {
+    public static Path getChunkTreePath(Path chunkPath) {
+        return chunkPath.resolveSibling(chunkPath.getFileName() + CHUNK_TREE_EXTENSION);
+    }
+
+    /**
+     * hash a chunk, and record the chaining values of its subtrees at its position in the file next to it,
+     * chunkIndex * chunk size is taken as its position, which holds for every chunk except the last
+     */
+    public static String calculateChunkHash(Path chunkPath, int chunkIndex) {
+        try (FileChannel channel = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
+            ChunkDigest digest = new ChunkDigest(channel.size(), chunkIndex);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.array(), buffer.position(), buffer.remaining());
+                buffer.clear();
+            }
+            digest.writeChunkTree(getChunkTreePath(chunkPath));
+            return digest.hash();
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * stream a chunk of the given size, -1 if unknown, into chunkPath, hashing it while it is written,
+     * the chunk is only moved into place when its hash matches chunkHashValue, and its tree is only written
+     * once it is in place so a tree never describes other bytes than the chunk next to it
+     */
+    public static boolean writeChunk(InputStream in, long size, long maxSize, Path chunkPath, int chunkIndex,
+                                     String chunkHashValue) throws IOException {
+        Path partPath = chunkPath.resolveSibling(chunkPath.getFileName() + CHUNK_PART_EXTENSION);
+        Files.createDirectories(chunkPath.getParent());
         try {
-            Files.createDirectories(targetPath.getParent());
-            try (Stream<Path> chunkPathStream = Files.list(chunkDirPath);
-                 FileChannel outChannel = FileChannel.open(targetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-                List<Path> chunkList = chunkPathStream
-                        .sorted(Comparator.comparing(p -> Integer.parseInt(p.getFileName().toString())))
-                        .toList();
-                for (Path chunk : chunkList) {
-                    transferTo(chunk, outChannel);
+            ChunkDigest digest = new ChunkDigest(size, chunkIndex);
+            long written = 0;
+            try (ReadableByteChannel inChannel = Channels.newChannel(in);
+                 FileChannel outChannel = FileChannel.open(partPath,
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (inChannel.read(buffer) != -1) {
+                    buffer.flip();
+                    written += buffer.remaining();
+                    if (written > maxSize) {
+                        throw new ChunkTooLargeException();
+                    }
+                    if (size >= 0 && written > size) {
+                        break;
+                    }
+                    digest.update(buffer.array(), buffer.position(), buffer.remaining());
+                    while (buffer.hasRemaining()) {
+                        outChannel.write(buffer);
+                    }
+                    buffer.clear();
                 }
             }
-            delete(chunkDirPath);
+            if ((size >= 0 && written != size) || !chunkHashValue.equals(digest.hash())) {
+                delete(partPath);
+                return false;
+            }
+            Path chunkTreePath = getChunkTreePath(chunkPath);
+            Files.deleteIfExists(chunkTreePath);
+            Files.move(partPath, chunkPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            digest.writeChunkTree(chunkTreePath);
+            return true;
         } catch (IOException e) {
+            delete(partPath);
+            throw e;
+        }
+    }
+
+    /**
+     * hasher holding the subtrees of every chunk but the last, null when the chunks do not line up with the tree
+     */
+    private static Blake3Tree.Hasher loadChunkTree(List<Path> chunkList, long[] chunkSizes) {
+        int last = chunkList.size() - 1;
+        if (last < 1 || chunkSizes[last] == 0 || chunkSizes[last] > chunkSizes[0]
+                || chunkSizes[0] % Blake3Tree.CHUNK_LEN != 0) {
+            return null;
+        }
+        long chunkCount = chunkSizes[0] / Blake3Tree.CHUNK_LEN;
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher();
+        for (int i = 0; i < last; i++) {
+            Path chunkTreePath = getChunkTreePath(chunkList.get(i));
+            if (chunkSizes[i] != chunkSizes[0] || !Files.isRegularFile(chunkTreePath)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(chunkTreePath)))) {
+                if (in.readLong() != i * chunkCount) {
+                    return null;
+                }
+                long covered = 0;
+                for (int subtreeCount = in.readInt(); subtreeCount > 0; subtreeCount--) {
+                    long subtreeChunkCount = in.readLong();
+                    byte[] chainingValue = new byte[Blake3Tree.OUT_LEN];
+                    in.readFully(chainingValue);
+                    hasher.addSubtree(new Blake3Tree.Subtree(subtreeChunkCount, chainingValue));
+                    covered += subtreeChunkCount;
+                }
+                if (covered != chunkCount) {
+                    return null;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Unusable chunk tree {}, falling back to full hash", chunkTreePath);
+                return null;
+            }
+        }
+        return hasher;
+    }
+
+    /**
+     * merge the chunks into target in a single pass and return the hash of the merged content,
+     * the next block is read while the current one is hashed, blocks are written by position in parallel,
+     * when the chunk trees recorded at upload line up only the last chunk is hashed
+     */
+    public static String chunkMerge(Path chunkDirPath, Path targetPath) throws IOException {
+        List<Path> chunkList;
+        try (Stream<Path> chunkPathStream = Files.list(chunkDirPath)) {
+            chunkList = chunkPathStream
+                    .filter(p -> CHUNK_NAME.matcher(p.getFileName().toString()).matches())
+                    .sorted(Comparator.comparing(p -> Integer.parseInt(p.getFileName().toString())))
+                    .toList();
+        }
+        return chunkMerge(chunkDirPath, chunkList, targetPath);
+    }
+
+    /**
+     * merge a known number of chunks, named 0 to chunkCount - 1, without listing the chunk directory
+     */
+    public static String chunkMerge(Path chunkDirPath, int chunkCount, Path targetPath) throws IOException {
+        List<Path> chunkList = IntStream.range(0, chunkCount)
+                .mapToObj(chunkIndex -> chunkDirPath.resolve(String.valueOf(chunkIndex)))
+                .toList();
+        return chunkMerge(chunkDirPath, chunkList, targetPath);
+    }
+
+    private static String chunkMerge(Path chunkDirPath, List<Path> chunkList, Path targetPath) throws IOException {
+        long total = 0;
+        long[] chunkSizes = new long[chunkList.size()];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = Files.size(chunkList.get(i));
+            total += chunkSizes[i];
+        }
+        Blake3Tree.Hasher treeHasher = loadChunkTree(chunkList, chunkSizes);
+        int lastChunk = chunkList.size() - 1;
+        Files.createDirectories(targetPath.getParent());
+        Blake3.Blake3_256 digest = new Blake3.Blake3_256();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try (FileChannel outChannel = FileChannel.open(targetPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (total > 0) {
+                outChannel.write(ByteBuffer.allocate(1), total - 1);
+            }
+            BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(MERGE_BUFFER_COUNT);
+            for (int i = 0; i < MERGE_BUFFER_COUNT; i++) {
+                freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+            }
+            BlockingQueue<MergeBlock> readBlocks = new ArrayBlockingQueue<>(MERGE_BUFFER_COUNT);
+            Future<?> reader = executor.submit(() -> {
+                try {
+                    long position = 0;
+                    for (int i = 0; i < chunkList.size(); i++) {
+                        try (FileChannel inChannel = FileChannel.open(chunkList.get(i), StandardOpenOption.READ)) {
+                            while (true) {
+                                ByteBuffer buffer = freeBuffers.take();
+                                boolean end = false;
+                                while (buffer.hasRemaining() && !end) {
+                                    end = inChannel.read(buffer) == -1;
+                                }
+                                buffer.flip();
+                                if (!buffer.hasRemaining()) {
+                                    buffer.clear();
+                                    freeBuffers.put(buffer);
+                                    break;
+                                }
+                                int length = buffer.remaining();
+                                readBlocks.put(new MergeBlock(buffer, position, i));
+                                position += length;
+                            }
+                        }
+                    }
+                    return null;
+                } finally {
+                    readBlocks.put(MergeBlock.END);
+                }
+            });
+            List<Future<?>> writerList = new ArrayList<>();
+            MergeBlock block;
+            while ((block = readBlocks.take()) != MergeBlock.END) {
+                ByteBuffer buffer = block.buffer();
+                long position = block.position();
+                if (treeHasher == null) {
+                    digest.update(buffer.array(), 0, buffer.limit());
+                } else if (block.chunk() == lastChunk) {
+                    treeHasher.update(buffer.array(), 0, buffer.limit());
+                }
+                writerList.add(executor.submit(() -> {
+                    try {
+                        while (buffer.hasRemaining()) {
+                            outChannel.write(buffer, position + buffer.position());
+                        }
+                        return null;
+                    } finally {
+                        buffer.clear();
+                        freeBuffers.put(buffer);
+                    }
+                }));
+            }
+            reader.get();
+            for (Future<?> writer : writerList) {
+                writer.get();
+            }
+            if (outChannel.size() != total) {
+                throw new IOException("Merged size mismatch");
+            }
+        } catch (IOException | ExecutionException | InterruptedException e) {
+            executor.shutdownNow();
             delete(targetPath);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             throw new IOException(e);
+        } finally {
+            executor.close();
         }
+        delete(chunkDirPath);
+        return EncryptUtil.bytesToHex(treeHasher == null ? digest.digest() : treeHasher.digest());
     }
 
     public static void delete(List<Path> pathList) throws FileDeletionFailedException {
@@ -158,4 +408,56 @@ public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
     public static class FileDeletionFailedException extends IOException {
     }
 
+    public static class ChunkTooLargeException extends IOException {
+    }
+
+    /**
+     * Hash of a chunk on its own, together with its subtrees at its position in the file
+     */
+    private static final class ChunkDigest {
+
+        private final Blake3.Blake3_256 digest = new Blake3.Blake3_256();
+        private final Blake3Tree.SubtreeHasher subtreeHasher;
+        private final long startChunk;
+
+        private ChunkDigest(long size, int chunkIndex) {
+            long chunkCount = size / Blake3Tree.CHUNK_LEN;
+            this.startChunk = chunkIndex * chunkCount;
+            this.subtreeHasher = size > 0 && size % Blake3Tree.CHUNK_LEN == 0
+                    ? new Blake3Tree.SubtreeHasher(startChunk, chunkCount) : null;
+        }
+
+        private void update(byte[] input, int offset, int length) {
+            digest.update(input, offset, length);
+            if (subtreeHasher != null) {
+                subtreeHasher.update(input, offset, length);
+            }
+        }
+
+        private String hash() {
+            return EncryptUtil.bytesToHex(digest.digest());
+        }
+
+        private void writeChunkTree(Path chunkTreePath) throws IOException {
+            List<Blake3Tree.Subtree> subtreeList = subtreeHasher == null ? null : subtreeHasher.subtrees();
+            if (subtreeList == null) {
+                Files.deleteIfExists(chunkTreePath);
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(chunkTreePath)))) {
+                out.writeLong(startChunk);
+                out.writeInt(subtreeList.size());
+                for (Blake3Tree.Subtree subtree : subtreeList) {
+                    out.writeLong(subtree.chunkCount());
+                    out.write(subtree.chainingValue());
+                }
+            }
+        }
+
+    }
+
+    private record MergeBlock(ByteBuffer buffer, long position, int chunk) {
+        private static final MergeBlock END = new MergeBlock(null, -1, -1);
+    }
+
 }
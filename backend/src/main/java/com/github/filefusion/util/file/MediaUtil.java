@@ -108,10 +108,10 @@ private static CommandLine buildDashGenerationCommand(Path input, Integer dimens
         return commandLine;
     }
 
-    private static GetVideoInfoResult getVideoDimensionsInfo(Path path, Duration videoGenerateTimeout)
+    private static GetVideoInfoResult getVideoDimensionsInfo(Path path, Duration videoGenerateTimeout, String owner)
             throws ReadVideoInfoException, IOException, ExecutionException, InterruptedException {
         String command = GET_VIDEO_DIMENSIONS_COMMAND.formatted(path);
-        ExecUtil.ExecResult execResult = ExecUtil.exec(command, videoGenerateTimeout);
+        ExecUtil.ExecResult execResult = ExecUtil.exec(command, videoGenerateTimeout, ExecUtil.Priority.background, owner);
         if (!execResult.success()) {
             throw new ReadVideoInfoException();
         }
@@ -160,7 +160,7 @@ private static Map<VideoAttribute.Resolution, int[]> getVideoScaleDimensions(int
                 ));
     }
 
-    public static boolean isDashSupported(String mimeType, List<String> supportedMimeTypes) {
+    public static boolean isDashSupported(String mimeType, Set<String> supportedMimeTypes) {
         return StringUtils.hasLength(mimeType) && supportedMimeTypes.contains(mimeType);
     }
 
@@ -172,14 +172,14 @@ public static MimeType getDashFileMimeType(String fileName) {
                 .orElse(null);
     }
 
-    public static void generateMediaDash(Path originalPath, Path targetPath, Duration videoGenerateTimeout)
+    public static void generateMediaDash(Path originalPath, Path targetPath, Duration videoGenerateTimeout, String owner)
             throws ReadVideoInfoException, IOException, ExecutionException, InterruptedException {
         Path parent = targetPath.getParent();
         Path statusFile = parent.resolve(STATUS_FILE_NAME);
         if (Files.isRegularFile(statusFile)) {
             return;
         }
-        GetVideoInfoResult videoInfo = getVideoDimensionsInfo(originalPath, videoGenerateTimeout);
+        GetVideoInfoResult videoInfo = getVideoDimensionsInfo(originalPath, videoGenerateTimeout, owner);
         int[] originalDimensions = new int[]{videoInfo.getStreams().getFirst().getWidth(), videoInfo.getStreams().getFirst().getHeight()};
         Map<VideoAttribute.Resolution, int[]> targetDimensionsMap = getVideoScaleDimensions(originalDimensions);
 
@@ -210,7 +210,7 @@ public static void generateMediaDash(Path originalPath, Path targetPath, Duratio
         Files.createDirectories(parent);
         try {
             Files.writeString(statusFile, GenerationStatus.WAITING.name());
-            ExecUtil.ExecResult execResult = ExecUtil.exec(commandLine, videoGenerateTimeout);
+            ExecUtil.ExecResult execResult = ExecUtil.exec(commandLine, videoGenerateTimeout, ExecUtil.Priority.background, owner);
             if (execResult.success()) {
                 Files.writeString(statusFile, GenerationStatus.SUCCESS.name());
             } else {
@@ -1,13 +1,15 @@
 package com.github.filefusion.util.file;
 
 import com.github.filefusion.util.ExecUtil;
+import com.github.filefusion.util.ULID;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
-import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -18,12 +20,13 @@
  */
 public final class ThumbnailUtil {
 
+    public static final String TEMP_FILE_PREFIX = ".";
     private static final String GENERATE_IMAGE_THUMBNAIL_COMMAND = "vipsthumbnail %s --size 256 --export-profile srgb -o %s[Q=75,keep=none]";
     private static final String GENERATE_VIDEO_THUMBNAIL_COMMAND = "ffmpeg -v error -hwaccel auto -i %s -vf 'thumbnail,scale=256:-1' -an -quality 75 -vframes 1 -y %s";
 
     public static boolean hasThumbnail(String mimeType,
-                                       List<String> thumbnailImageMimeType,
-                                       List<String> thumbnailVideoMimeType) {
+                                       Set<String> thumbnailImageMimeType,
+                                       Set<String> thumbnailVideoMimeType) {
         if (!StringUtils.hasLength(mimeType)) {
             return false;
         }
@@ -32,24 +35,31 @@ public static boolean hasThumbnail(String mimeType,
 
     public static Path generateThumbnail(String mimeType,
                                          Path originalPath, Path targetPath,
-                                         List<String> thumbnailImageMimeType,
-                                         List<String> thumbnailVideoMimeType, Duration thumbnailGenerateTimeout)
+                                         Set<String> thumbnailImageMimeType,
+                                         Set<String> thumbnailVideoMimeType, Duration thumbnailGenerateTimeout,
+                                         String owner)
             throws FileNotSupportThumbnailException, ThumbnailGenerationFailedException, IOException, ExecutionException, InterruptedException {
         if (Files.isRegularFile(targetPath)) {
             return targetPath;
         }
+        Path tempPath = targetPath.resolveSibling(TEMP_FILE_PREFIX + ULID.randomULID() + "-" + targetPath.getFileName());
         String command;
         if (thumbnailImageMimeType.contains(mimeType)) {
-            command = GENERATE_IMAGE_THUMBNAIL_COMMAND.formatted(originalPath, targetPath);
+            command = GENERATE_IMAGE_THUMBNAIL_COMMAND.formatted(originalPath, tempPath);
         } else if (thumbnailVideoMimeType.contains(mimeType)) {
-            command = GENERATE_VIDEO_THUMBNAIL_COMMAND.formatted(originalPath, targetPath);
+            command = GENERATE_VIDEO_THUMBNAIL_COMMAND.formatted(originalPath, tempPath);
         } else {
             throw new FileNotSupportThumbnailException();
         }
         Files.createDirectories(targetPath.getParent());
-        ExecUtil.ExecResult execResult = ExecUtil.exec(command, thumbnailGenerateTimeout);
-        if (!execResult.success() || !Files.exists(targetPath)) {
-            throw new ThumbnailGenerationFailedException();
+        try {
+            ExecUtil.ExecResult execResult = ExecUtil.exec(command, thumbnailGenerateTimeout, ExecUtil.Priority.interactive, owner);
+            if (!execResult.success() || !Files.isRegularFile(tempPath) || Files.size(tempPath) == 0) {
+                throw new ThumbnailGenerationFailedException();
+            }
+            Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
         }
         return targetPath;
     }
@@ -0,0 +1,648 @@
+package com.github.filefusion.util.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ZipArchive
+ * <p>
+ * ZIP archive whose entries are known up front. Stored entries get their CRC and sizes in the local header, so an
+ * archive of stored entries has a fixed layout; deflated entries are compressed block by block across cores.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public final class ZipArchive {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_LEN = 30;
+    private static final int CENTRAL_HEADER_LEN = 46;
+    private static final int ZIP64_END_LEN = 56;
+    private static final int ZIP64_LOCATOR_LEN = 20;
+    private static final int END_LEN = 22;
+    private static final int ZIP64_EXTRA_TAG = 0x0001;
+    private static final int EXTRA_HEADER_LEN = 4;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final long ZIP64_DEFLATE_LIMIT = ZIP64_MAGIC - (ZIP64_MAGIC >> 9);
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int DOS_DIRECTORY_ATTRIBUTE = 0x10;
+    private static final int CRC_BUFFER_SIZE = 1024 * 1024;
+    private static final int PREFETCH_COUNT = 32;
+    private static final int PROBE_MIN_SIZE = 512;
+    private static final int PROBE_SIZE = 64 * 1024;
+    private static final double PROBE_MAX_RATIO = 0.9;
+    private static final int DEFLATE_BLOCK_SIZE = 1024 * 1024;
+    private static final int DEFLATE_DICTIONARY_SIZE = 32 * 1024;
+    private static final int DEFLATE_WINDOW = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final List<Entry> entryList;
+    private final byte[][] nameList;
+    private final long[] offsetList;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final long size;
+
+    public ZipArchive(List<Entry> entryList) {
+        this.entryList = entryList;
+        this.nameList = new byte[entryList.size()][];
+        this.offsetList = new long[entryList.size()];
+        long offset = 0;
+        long centralSize = 0;
+        for (int i = 0; i < entryList.size(); i++) {
+            Entry entry = entryList.get(i);
+            nameList[i] = entry.name().getBytes(StandardCharsets.UTF_8);
+            offsetList[i] = offset;
+            offset += LOCAL_HEADER_LEN + nameList[i].length + localExtraLength(isZip64(entry.size(), entry.size()))
+                    + entry.size();
+            centralSize += CENTRAL_HEADER_LEN + nameList[i].length
+                    + centralExtraLength(isZip64(entry.size(), entry.size()), offsetList[i]);
+        }
+        this.centralDirectoryOffset = offset;
+        this.centralDirectorySize = centralSize;
+        this.size = offset + centralSize + endLength(entryList.size(), offset, centralSize);
+    }
+
+    private static boolean isZip64(long compressedSize, long size) {
+        return compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+    }
+
+    private static boolean isZip64End(int count, long centralDirectoryOffset, long centralDirectorySize) {
+        return count >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+    }
+
+    private static int localExtraLength(boolean zip64) {
+        return zip64 ? EXTRA_HEADER_LEN + 16 : 0;
+    }
+
+    private static int centralExtraLength(boolean zip64, long offset) {
+        int length = (zip64 ? 16 : 0) + (offset >= ZIP64_MAGIC ? 8 : 0);
+        return length > 0 ? EXTRA_HEADER_LEN + length : 0;
+    }
+
+    private static int endLength(int count, long centralDirectoryOffset, long centralDirectorySize) {
+        return (isZip64End(count, centralDirectoryOffset, centralDirectorySize) ? ZIP64_END_LEN + ZIP64_LOCATOR_LEN : 0)
+                + END_LEN;
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static int dosDate(LocalDateTime time) {
+        int year = Math.max(time.getYear(), 1980);
+        return (year - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] localHeader(byte[] name, Entry entry, int method, long crc, long compressedSize, boolean zip64) {
+        boolean dataDescriptor = method == METHOD_DEFLATED;
+        ByteBuffer header = allocate(LOCAL_HEADER_LEN + name.length + localExtraLength(zip64));
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) (dataDescriptor ? FLAG_UTF8 | FLAG_DATA_DESCRIPTOR : FLAG_UTF8))
+                .putShort((short) method)
+                .putShort((short) dosTime(entry.lastModified()))
+                .putShort((short) dosDate(entry.lastModified()))
+                .putInt((int) crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : dataDescriptor ? 0 : entry.size()))
+                .putShort((short) name.length)
+                .putShort((short) localExtraLength(zip64))
+                .put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_TAG).putShort((short) 16)
+                    .putLong(dataDescriptor ? 0 : entry.size())
+                    .putLong(dataDescriptor ? 0 : compressedSize);
+        }
+        return header.array();
+    }
+
+    private static byte[] dataDescriptor(long crc, long compressedSize, long size, boolean zip64) {
+        ByteBuffer descriptor = allocate(zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc);
+        if (zip64) {
+            descriptor.putLong(compressedSize).putLong(size);
+        } else {
+            descriptor.putInt((int) compressedSize).putInt((int) size);
+        }
+        return descriptor.array();
+    }
+
+    private static byte[] centralHeader(byte[] name, Entry entry, int method, long crc, long compressedSize, long offset) {
+        boolean zip64 = isZip64(compressedSize, entry.size());
+        int extraLength = centralExtraLength(zip64, offset);
+        ByteBuffer header = allocate(CENTRAL_HEADER_LEN + name.length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION_ZIP64)
+                .putShort((short) (extraLength > 0 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) (method == METHOD_DEFLATED ? FLAG_UTF8 | FLAG_DATA_DESCRIPTOR : FLAG_UTF8))
+                .putShort((short) method)
+                .putShort((short) dosTime(entry.lastModified()))
+                .putShort((short) dosDate(entry.lastModified()))
+                .putInt((int) crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : entry.size()))
+                .putShort((short) name.length)
+                .putShort((short) extraLength)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(entry.isDirectory() ? DOS_DIRECTORY_ATTRIBUTE : 0)
+                .putInt((int) Math.min(offset, ZIP64_MAGIC))
+                .put(name);
+        if (extraLength > 0) {
+            header.putShort((short) ZIP64_EXTRA_TAG).putShort((short) (extraLength - EXTRA_HEADER_LEN));
+            if (zip64) {
+                header.putLong(entry.size()).putLong(compressedSize);
+            }
+            if (offset >= ZIP64_MAGIC) {
+                header.putLong(offset);
+            }
+        }
+        return header.array();
+    }
+
+    private static byte[] end(int count, long centralDirectoryOffset, long centralDirectorySize) {
+        boolean zip64End = isZip64End(count, centralDirectoryOffset, centralDirectorySize);
+        ByteBuffer end = allocate(endLength(count, centralDirectoryOffset, centralDirectorySize));
+        if (zip64End) {
+            end.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(ZIP64_END_LEN - 12)
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(centralDirectorySize)
+                    .putLong(centralDirectoryOffset);
+            end.putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0)
+                    .putLong(centralDirectoryOffset + centralDirectorySize)
+                    .putInt(1);
+        }
+        end.putInt(END_SIGNATURE)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        return end.array();
+    }
+
+    private static void checkSize(FileChannel channel, Entry entry) throws IOException {
+        if (channel.size() != entry.size()) {
+            throw new IOException("File size changed: " + entry.path());
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * crc32 of a blob, the size is checked against the one the layout was computed from
+     *
+     * @param entry entry
+     * @return crc32
+     * @throws IOException file is not readable or its size changed
+     */
+    private static long calculateCrc(Entry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CRC_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+            checkSize(channel, entry);
+            while (channel.read(buffer) > 0) {
+                crc.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long crc(Entry entry, Map<String, Long> crcCache, BiConsumer<String, Long> crcConsumer)
+            throws IOException {
+        if (entry.isDirectory()) {
+            return 0L;
+        }
+        Long crc = crcCache.get(entry.hashValue());
+        if (crc != null) {
+            if (Files.size(entry.path()) != entry.size()) {
+                throw new IOException("File size changed: " + entry.path());
+            }
+            return crc;
+        }
+        crc = calculateCrc(entry);
+        crcConsumer.accept(entry.hashValue(), crc);
+        return crc;
+    }
+
+    /**
+     * whether deflating is worth it, judged on a sample from the middle of the file
+     *
+     * @param entry entry
+     * @return whether deflating is worth it
+     * @throws IOException file is not readable or its size changed
+     */
+    private static boolean shouldDeflate(Entry entry) throws IOException {
+        if (entry.isDirectory() || !entry.compressible() || entry.size() < PROBE_MIN_SIZE) {
+            return false;
+        }
+        int length = (int) Math.min(PROBE_SIZE, entry.size());
+        ByteBuffer sample = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+            checkSize(channel, entry);
+            read(channel, sample, (entry.size() - length) / 2);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample.array());
+            deflater.finish();
+            byte[] buffer = new byte[length];
+            long compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+            }
+            return compressedLength < length * PROBE_MAX_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * deflate one block as part of a raw deflate stream, primed with the end of the previous block,
+     * blocks other than the last end on a byte boundary so their output can be concatenated
+     *
+     * @param block      block
+     * @param dictionary end of the previous block, null for the first block
+     * @param last       whether it is the last block
+     * @return compressed block
+     */
+    private static byte[] deflateBlock(byte[] block, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(block);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.length / 2);
+            byte[] buffer = new byte[DEFLATE_DICTIONARY_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, length);
+                } while (length == buffer.length || !deflater.needsInput());
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private int localHeaderLength(int index) {
+        Entry entry = entryList.get(index);
+        return LOCAL_HEADER_LEN + nameList[index].length + localExtraLength(isZip64(entry.size(), entry.size()));
+    }
+
+    private int centralHeaderLength(int index) {
+        Entry entry = entryList.get(index);
+        return CENTRAL_HEADER_LEN + nameList[index].length
+                + centralExtraLength(isZip64(entry.size(), entry.size()), offsetList[index]);
+    }
+
+    /**
+     * index of the segment containing a position
+     *
+     * @param segmentOffsetList ascending segment start offsets
+     * @param position          position
+     * @return index
+     */
+    private static int segmentIndex(long[] segmentOffsetList, long position) {
+        int index = Arrays.binarySearch(segmentOffsetList, position);
+        return Math.max(index >= 0 ? index : -index - 2, 0);
+    }
+
+    private static void writeSlice(OutputStream out, byte[] bytes, long offset, long start, long end) throws IOException {
+        int from = (int) Math.max(start - offset, 0);
+        int to = (int) Math.min(end - offset, bytes.length);
+        if (from < to) {
+            out.write(bytes, from, to - from);
+        }
+    }
+
+    /**
+     * write the archive of stored entries
+     *
+     * @param out         output stream
+     * @param transfer    writes a range of a file to the output stream
+     * @param crcCache    known crc32 by hash value
+     * @param crcConsumer receives every crc32 that had to be computed
+     * @throws IOException file is not readable or connection closed
+     */
+    public void write(OutputStream out, Transfer transfer, Map<String, Long> crcCache,
+                      BiConsumer<String, Long> crcConsumer) throws IOException {
+        write(out, transfer, 0, size, crcCache, crcConsumer);
+    }
+
+    /**
+     * write a byte range of the archive of stored entries, only the headers inside the range need a crc32,
+     * those of upcoming headers are computed in parallel while earlier bytes are sent
+     *
+     * @param out         output stream
+     * @param transfer    writes a range of a file to the output stream
+     * @param start       start position
+     * @param end         end position, exclusive
+     * @param crcCache    known crc32 by hash value
+     * @param crcConsumer receives every crc32 that had to be computed
+     * @throws IOException file is not readable or connection closed
+     */
+    public void write(OutputStream out, Transfer transfer, long start, long end, Map<String, Long> crcCache,
+                      BiConsumer<String, Long> crcConsumer) throws IOException {
+        start = Math.max(start, 0);
+        end = Math.min(end, size);
+        if (start >= end) {
+            return;
+        }
+        int count = entryList.size();
+        long[] centralOffsetList = new long[count];
+        long centralOffset = centralDirectoryOffset;
+        for (int i = 0; i < count; i++) {
+            centralOffsetList[i] = centralOffset;
+            centralOffset += centralHeaderLength(i);
+        }
+        int localFirst = segmentIndex(offsetList, start);
+        int localLast = start < centralDirectoryOffset ? segmentIndex(offsetList, Math.min(end, centralDirectoryOffset) - 1) : -1;
+        int centralFirst = segmentIndex(centralOffsetList, start);
+        int centralLast = end > centralDirectoryOffset && count > 0
+                ? segmentIndex(centralOffsetList, Math.min(end, centralOffset) - 1) : -1;
+        long rangeStart = start;
+        int[] crcIndexList = IntStream.concat(
+                IntStream.rangeClosed(localFirst, localLast).filter(i -> offsetList[i] + localHeaderLength(i) > rangeStart),
+                IntStream.rangeClosed(centralFirst, centralLast)).toArray();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CrcPrefetcher crcPrefetcher = new CrcPrefetcher(executor, crcIndexList, crcCache, crcConsumer);
+            try {
+                for (int i = localFirst; i <= localLast; i++) {
+                    Entry entry = entryList.get(i);
+                    long dataOffset = offsetList[i] + localHeaderLength(i);
+                    if (dataOffset > start) {
+                        writeSlice(out, localHeader(nameList[i], entry, METHOD_STORED, crcPrefetcher.get(i), entry.size(),
+                                isZip64(entry.size(), entry.size())), offsetList[i], start, end);
+                    }
+                    long dataEnd = dataOffset + entry.size();
+                    if (!entry.isDirectory() && dataEnd > start && dataOffset < end) {
+                        transfer.transfer(entry.path(), Math.max(start - dataOffset, 0), Math.min(end, dataEnd) - dataOffset);
+                    }
+                }
+                for (int i = centralFirst; i <= centralLast; i++) {
+                    Entry entry = entryList.get(i);
+                    writeSlice(out, centralHeader(nameList[i], entry, METHOD_STORED, crcPrefetcher.get(i), entry.size(),
+                            offsetList[i]), centralOffsetList[i], start, end);
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                crcPrefetcher.cancel();
+            }
+        }
+        writeSlice(out, end(count, centralDirectoryOffset, centralDirectorySize), centralOffset, start, end);
+    }
+
+    /**
+     * write the archive choosing store or deflate per entry, the size is not known up front,
+     * upcoming entries are probed in parallel and each deflated entry is compressed in blocks across cores
+     *
+     * @param out         output stream
+     * @param transfer    writes a range of a file to the output stream
+     * @param crcCache    known crc32 by hash value
+     * @param crcConsumer receives every crc32 that had to be computed
+     * @throws IOException file is not readable or connection closed
+     */
+    public void writeAdaptive(OutputStream out, Transfer transfer, Map<String, Long> crcCache,
+                              BiConsumer<String, Long> crcConsumer) throws IOException {
+        int[] methodList = new int[entryList.size()];
+        long[] crcList = new long[entryList.size()];
+        long[] compressedSizeList = new long[entryList.size()];
+        long[] adaptiveOffsetList = new long[entryList.size()];
+        List<Future<Long>> futureList = new ArrayList<>(entryList.size());
+        long offset = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                for (int i = 0; i < entryList.size(); i++) {
+                    while (futureList.size() < entryList.size() && futureList.size() <= i + PREFETCH_COUNT) {
+                        Entry entry = entryList.get(futureList.size());
+                        futureList.add(executor.submit(() -> shouldDeflate(entry) ? null : crc(entry, crcCache, crcConsumer)));
+                    }
+                    Long crc = futureList.get(i).get();
+                    futureList.set(i, null);
+                    Entry entry = entryList.get(i);
+                    byte[] name = nameList[i];
+                    adaptiveOffsetList[i] = offset;
+                    if (crc != null) {
+                        boolean zip64 = isZip64(entry.size(), entry.size());
+                        byte[] header = localHeader(name, entry, METHOD_STORED, crc, entry.size(), zip64);
+                        out.write(header);
+                        if (!entry.isDirectory() && entry.size() > 0) {
+                            transfer.transfer(entry.path(), 0, entry.size());
+                        }
+                        methodList[i] = METHOD_STORED;
+                        crcList[i] = crc;
+                        compressedSizeList[i] = entry.size();
+                        offset += header.length + entry.size();
+                    } else {
+                        boolean zip64 = entry.size() >= ZIP64_DEFLATE_LIMIT;
+                        byte[] header = localHeader(name, entry, METHOD_DEFLATED, 0, 0, zip64);
+                        out.write(header);
+                        long[] deflated = deflate(entry, out, executor);
+                        if (!crcCache.containsKey(entry.hashValue())) {
+                            crcConsumer.accept(entry.hashValue(), deflated[0]);
+                        }
+                        byte[] descriptor = dataDescriptor(deflated[0], deflated[1], entry.size(), zip64);
+                        out.write(descriptor);
+                        methodList[i] = METHOD_DEFLATED;
+                        crcList[i] = deflated[0];
+                        compressedSizeList[i] = deflated[1];
+                        offset += header.length + deflated[1] + descriptor.length;
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                futureList.stream().filter(Objects::nonNull).forEach(future -> future.cancel(true));
+            }
+        }
+        long centralOffset = offset;
+        for (int i = 0; i < entryList.size(); i++) {
+            byte[] header = centralHeader(nameList[i], entryList.get(i), methodList[i], crcList[i],
+                    compressedSizeList[i], adaptiveOffsetList[i]);
+            out.write(header);
+            offset += header.length;
+        }
+        out.write(end(entryList.size(), centralOffset, offset - centralOffset));
+    }
+
+    /**
+     * deflate a file, blocks are compressed in parallel and written in order
+     *
+     * @return crc32 and compressed size
+     */
+    private long[] deflate(Entry entry, OutputStream out, ExecutorService executor)
+            throws IOException, ExecutionException, InterruptedException {
+        CRC32 crc = new CRC32();
+        long compressedSize = 0;
+        Deque<Future<byte[]>> pendingList = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+            checkSize(channel, entry);
+            byte[] dictionary = null;
+            long position = 0;
+            while (position < entry.size()) {
+                byte[] block = new byte[(int) Math.min(DEFLATE_BLOCK_SIZE, entry.size() - position)];
+                read(channel, ByteBuffer.wrap(block), position);
+                position += block.length;
+                crc.update(block);
+                byte[] blockDictionary = dictionary;
+                boolean last = position == entry.size();
+                pendingList.add(executor.submit(() -> deflateBlock(block, blockDictionary, last)));
+                dictionary = Arrays.copyOfRange(block, Math.max(block.length - DEFLATE_DICTIONARY_SIZE, 0), block.length);
+                while (pendingList.size() >= DEFLATE_WINDOW) {
+                    byte[] compressed = pendingList.poll().get();
+                    out.write(compressed);
+                    compressedSize += compressed.length;
+                }
+            }
+            while (!pendingList.isEmpty()) {
+                byte[] compressed = pendingList.poll().get();
+                out.write(compressed);
+                compressedSize += compressed.length;
+            }
+        } finally {
+            pendingList.forEach(future -> future.cancel(true));
+        }
+        return new long[]{crc.getValue(), compressedSize};
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Computes crc32 ahead in the order the headers are written, each entry at most once
+     */
+    private final class CrcPrefetcher {
+
+        private final ExecutorService executor;
+        private final int[] indexList;
+        private final Map<String, Long> crcCache;
+        private final BiConsumer<String, Long> crcConsumer;
+        private final Map<Integer, Future<Long>> futureMap = new HashMap<>();
+        private int submitted = 0;
+        private int consumed = 0;
+
+        private CrcPrefetcher(ExecutorService executor, int[] indexList, Map<String, Long> crcCache,
+                              BiConsumer<String, Long> crcConsumer) {
+            this.executor = executor;
+            this.indexList = indexList;
+            this.crcCache = crcCache;
+            this.crcConsumer = crcConsumer;
+        }
+
+        private void submit(int index) {
+            Entry entry = entryList.get(index);
+            futureMap.computeIfAbsent(index, key -> executor.submit(() -> crc(entry, crcCache, crcConsumer)));
+        }
+
+        private long get(int index) throws ExecutionException, InterruptedException {
+            consumed++;
+            while (submitted < indexList.length && submitted < consumed + PREFETCH_COUNT) {
+                submit(indexList[submitted++]);
+            }
+            submit(index);
+            return futureMap.get(index).get();
+        }
+
+        private void cancel() {
+            futureMap.values().forEach(future -> future.cancel(true));
+        }
+
+    }
+
+    /**
+     * writes a range of a file to the archive output
+     */
+    @FunctionalInterface
+    public interface Transfer {
+
+        void transfer(Path path, long start, long end) throws IOException;
+
+    }
+
+    /**
+     * archive entry, path is null for a directory whose name ends with a separator
+     *
+     * @param name         name in the archive
+     * @param hashValue    hash value
+     * @param path         blob path
+     * @param size         size
+     * @param lastModified last modified time
+     * @param compressible whether the content type may be worth deflating
+     */
+    public record Entry(String name, String hashValue, Path path, long size, LocalDateTime lastModified,
+                        boolean compressible) {
+
+        public boolean isDirectory() {
+            return path == null;
+        }
+
+    }
+
+}
@@ -0,0 +1,75 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fill file_data.tree_path for existing data
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+public class V20220401_9__file_data_tree_path extends BaseJavaMigration {
+
+    private static final String SEPARATOR = "/";
+    private static final String FOLDER_MIME_TYPE = "custom/folder";
+    private static final int BATCH_SIZE = 1000;
+
+    private static String buildTreePath(String parentId, Map<String, String> folderParentMap, Map<String, String> treePathMap) {
+        Deque<String> unresolved = new ArrayDeque<>();
+        String currentId = parentId;
+        while (folderParentMap.containsKey(currentId) && !treePathMap.containsKey(currentId)) {
+            unresolved.push(currentId);
+            currentId = folderParentMap.get(currentId);
+        }
+        String treePath = treePathMap.getOrDefault(currentId, SEPARATOR);
+        while (!unresolved.isEmpty()) {
+            String folderId = unresolved.pop();
+            treePath = treePath + folderId + SEPARATOR;
+            treePathMap.put(folderId, treePath);
+        }
+        return treePath;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        Map<String, String> folderParentMap = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, parent_id FROM file_data WHERE mime_type = '"
+                     + FOLDER_MIME_TYPE + "'")) {
+            while (resultSet.next()) {
+                folderParentMap.put(resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+
+        Map<String, String> treePathMap = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, parent_id FROM file_data");
+             PreparedStatement update = connection.prepareStatement("UPDATE file_data SET tree_path = ? WHERE id = ?")) {
+            int batchCount = 0;
+            while (resultSet.next()) {
+                update.setString(1, buildTreePath(resultSet.getString(2), folderParentMap, treePathMap));
+                update.setString(2, resultSet.getString(1));
+                update.addBatch();
+                if (++batchCount >= BATCH_SIZE) {
+                    update.executeBatch();
+                    batchCount = 0;
+                }
+            }
+            if (batchCount > 0) {
+                update.executeBatch();
+            }
+        }
+    }
+
+}
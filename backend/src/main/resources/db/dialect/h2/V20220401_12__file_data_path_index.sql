@@ -0,0 +1 @@
+CREATE INDEX idx_file_data_path ON file_data (user_id, path);
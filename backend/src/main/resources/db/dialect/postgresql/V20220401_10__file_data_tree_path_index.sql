@@ -0,0 +1 @@
+CREATE INDEX idx_file_data_tree_path ON file_data (tree_path varchar_pattern_ops);
@@ -0,0 +1 @@
+CREATE INDEX idx_file_data_path ON file_data USING hash (path);
@@ -0,0 +1,5 @@
+CREATE INDEX idx_file_data_parent ON file_data (parent_id, user_id, deleted, name);
+
+CREATE INDEX idx_file_data_hash ON file_data (hash_value, mime_type);
+
+CREATE INDEX idx_file_data_deleted ON file_data (deleted, deleted_date);
@@ -0,0 +1,2 @@
+ALTER TABLE file_data
+    ADD tree_path VARCHAR(4096) DEFAULT NULL;
@@ -0,0 +1,286 @@
+package com.github.filefusion.file.repository;
+
+import com.github.filefusion.file.entity.FileData;
+import jakarta.persistence.EntityManagerFactory;
+import org.flywaydb.core.Flyway;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FileDataRepositoryIndexTests
+ * <p>
+ * Calls every FileDataRepository method against H2, runs EXPLAIN on the statements Hibernate actually executed
+ * with the values it bound, and checks the expected index is used.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class FileDataRepositoryIndexTests {
+
+    private static final String URL = "jdbc:h2:mem:file_data_index;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String USERNAME = "file_fusion";
+    private static final String PASSWORD = "file_fusion";
+    private static final int ROW_COUNT = 5000;
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 4, 1, 0, 0);
+
+    private static final String PRIMARY_KEY = "primary_key";
+    private static final String PARENT_INDEX = "idx_file_data_parent";
+    private static final String PATH_INDEX = "idx_file_data_path";
+    private static final String TREE_PATH_INDEX = "idx_file_data_tree_path";
+    private static final String HASH_INDEX = "idx_file_data_hash";
+    private static final String DELETED_INDEX = "idx_file_data_deleted";
+
+    private static final Map<String, QueryPlan> QUERY_PLANS = new LinkedHashMap<>() {{
+        put("findAllByUserIdAndParentIdAndNameLikeAndDeleted(String, String, String, boolean, Pageable)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                        "u1", "p1", "%1%", false, PageRequest.of(1, 10, Sort.by(FileData.Fields.name)))));
+        put("findAllByUserIdAndParentIdAndNameLikeAndDeleted(String, String, String, boolean, ScrollPosition, Limit, Sort)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                        "u1", "p1", "%1%", false, ScrollPosition.forward(Map.of(FileData.Fields.name, "f1", "id", "f1")),
+                        Limit.of(10), Sort.by(FileData.Fields.name))));
+        put("countByUserIdAndParentIdAndNameLikeAndDeleted(String, String, String, boolean)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.countByUserIdAndParentIdAndNameLikeAndDeleted(
+                        "u1", "p1", "%1%", false)));
+        put("findAllByUserIdAndParentIdAndMimeTypeAndDeletedFalse(String, String, String)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.findAllByUserIdAndParentIdAndMimeTypeAndDeletedFalse(
+                        "u1", "p1", "custom/folder")));
+        put("findAllByUserIdAndParentIdAndDeletedTrue(String, String)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.findAllByUserIdAndParentIdAndDeletedTrue(
+                        "u1", "recycle_bin")));
+        put("findAllByParentIdAndDeletedTrue(String)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.findAllByParentIdAndDeletedTrue("recycle_bin")));
+        put("findFirstByUserIdAndId(String, String)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.findFirstByUserIdAndId("u1", "f1")));
+        put("findFirstByUserIdAndIdAndDeletedFalse(String, String)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.findFirstByUserIdAndIdAndDeletedFalse("u1", "f1")));
+        put("findFirstByUserIdAndIdAndDeletedTrue(String, String)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.findFirstByUserIdAndIdAndDeletedTrue("u1", "f1")));
+        put("existsByUserIdAndIdAndDeletedFalse(String, String)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.existsByUserIdAndIdAndDeletedFalse("u1", "f1")));
+        put("findAllByTreePathStartingWith(String)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.findAllByTreePathStartingWith("/p1/")));
+        put("countByTreePathStartingWith(String)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.countByTreePathStartingWith("/p1/")));
+        put("findAllIdByTreePathStartingWith(String, String, Pageable)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.findAllIdByTreePathStartingWith(
+                        "/p1/", "f1", PageRequest.ofSize(5000))));
+        put("recycleByTreePathStartingWith(String, int, String, LocalDateTime, String)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.recycleByTreePathStartingWith(
+                        "/p1/", 4, "/p2/", DATE, "u1")));
+        put("moveByTreePathStartingWith(String, int, String, int, String, String, LocalDateTime)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.moveByTreePathStartingWith(
+                        "/p1/", 4, "/p2/", 2, "p2", "u1", DATE)));
+        put("moveByIdIn(List, int, String, int, String, String, LocalDateTime)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.moveByIdIn(
+                        List.of("f1", "f2", "f3"), 4, "/p2/", 2, "p2", "u1", DATE)));
+        put("renameByTreePathStartingWith(String, int, String, String, LocalDateTime)",
+                new QueryPlan(TREE_PATH_INDEX, repository -> repository.renameByTreePathStartingWith(
+                        "/p1/", 2, "p2", "u1", DATE)));
+        put("renameByIdIn(List, int, String, String, LocalDateTime)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.renameByIdIn(
+                        List.of("f1", "f2", "f3"), 2, "p2", "u1", DATE)));
+        put("findAllByUserIdAndPathInAndDeletedFalse(String, List)",
+                new QueryPlan(PATH_INDEX, repository -> repository.findAllByUserIdAndPathInAndDeletedFalse(
+                        "u1", List.of("p1", "p1/f1"))));
+        put("findFirstByUserIdAndPathAndDeletedFalse(String, String)",
+                new QueryPlan(PATH_INDEX, repository -> repository.findFirstByUserIdAndPathAndDeletedFalse("u1", "p1/f1")));
+        put("existsByUserIdAndParentIdAndNameAndDeletedFalse(String, String, String)",
+                new QueryPlan(PARENT_INDEX, repository -> repository.existsByUserIdAndParentIdAndNameAndDeletedFalse(
+                        "u1", "p1", "f1")));
+        put("findAllByUserIdAndIdInAndDeletedFalse(String, List)",
+                new QueryPlan(PRIMARY_KEY, repository -> repository.findAllByUserIdAndIdInAndDeletedFalse(
+                        "u1", List.of("f1", "f2"))));
+        put("countByHashValueList(List)",
+                new QueryPlan(HASH_INDEX, repository -> repository.countByHashValueList(List.of("h1", "h2"))));
+        put("findAllByDeletedTrueAndDeletedDateBefore(LocalDateTime)",
+                new QueryPlan(DELETED_INDEX, repository -> repository.findAllByDeletedTrueAndDeletedDateBefore(DATE)));
+    }};
+
+    private static final List<ExecutedStatement> EXECUTED_STATEMENTS = new ArrayList<>();
+
+    private static Connection connection;
+    private static EntityManagerFactory entityManagerFactory;
+    private static TransactionTemplate transactionTemplate;
+    private static FileDataRepository fileDataRepository;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        Flyway.configure()
+                .dataSource(URL, USERNAME, PASSWORD)
+                .locations("classpath:db/migration", "classpath:db/dialect/h2")
+                .table("db_version")
+                .load()
+                .migrate();
+        connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO file_data (id, user_id, parent_id, name, " +
+                "path, tree_path, hash_value, mime_type, size, encrypted, deleted, deleted_date, created_by, created_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0, FALSE, ?, ?, ?, CURRENT_TIMESTAMP)")) {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                boolean deleted = i % 10 == 0;
+                String userId = "u" + i % 20;
+                String parentId = deleted ? "recycle_bin" : "p" + i % 200;
+                insert.setString(1, "f" + i);
+                insert.setString(2, userId);
+                insert.setString(3, parentId);
+                insert.setString(4, "f" + i);
+                insert.setString(5, parentId + "/f" + i);
+                insert.setString(6, "/" + parentId + "/");
+                insert.setString(7, "h" + i % 1000);
+                insert.setString(8, i % 5 == 0 ? "custom/folder" : "image/png");
+                insert.setBoolean(9, deleted);
+                insert.setTimestamp(10, deleted ? Timestamp.valueOf("2022-01-01 00:00:00") : null);
+                insert.setString(11, userId);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(new DelegatingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD)) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return recording(super.getConnection());
+            }
+        });
+        factoryBean.setPackagesToScan(FileData.class.getPackageName());
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of(
+                AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName(),
+                AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName()));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+        transactionTemplate = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory));
+        fileDataRepository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+                .getRepository(FileDataRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() throws SQLException {
+        entityManagerFactory.close();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    static Stream<String> queryMethods() {
+        return QUERY_PLANS.keySet().stream();
+    }
+
+    private static String signature(Method method) {
+        return method.getName() + Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(", ", "(", ")"));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Connection recording(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                        return recording(statement, (String) args[0]);
+                    }
+                    return result;
+                });
+    }
+
+    private static PreparedStatement recording(PreparedStatement statement, String sql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("set") && args != null && args.length >= 2
+                            && args[0] instanceof Integer index) {
+                        parameters.put(index, method.getName().equals("setNull") ? null : args[1]);
+                    } else if (method.getName().startsWith("execute")) {
+                        EXECUTED_STATEMENTS.add(new ExecutedStatement(sql, new TreeMap<>(parameters)));
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static String explain(ExecutedStatement executedStatement) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + executedStatement.sql())) {
+            for (Map.Entry<Integer, Object> parameter : executedStatement.parameters().entrySet()) {
+                statement.setObject(parameter.getKey(), parameter.getValue());
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertTrue(resultSet.next(), executedStatement.sql());
+                return resultSet.getString(1).toLowerCase();
+            }
+        }
+    }
+
+    @Test
+    void everyRepositoryMethodHasQueryPlan() {
+        Set<String> repositoryMethods = Arrays.stream(FileDataRepository.class.getDeclaredMethods())
+                .filter(method -> !method.isSynthetic())
+                .map(FileDataRepositoryIndexTests::signature)
+                .collect(Collectors.toSet());
+        assertEquals(repositoryMethods, QUERY_PLANS.keySet());
+    }
+
+    @ParameterizedTest
+    @MethodSource("queryMethods")
+    void queryUsesIndex(String method) throws SQLException {
+        QueryPlan queryPlan = QUERY_PLANS.get(method);
+        EXECUTED_STATEMENTS.clear();
+        transactionTemplate.executeWithoutResult(status -> {
+            queryPlan.call().accept(fileDataRepository);
+            status.setRollbackOnly();
+        });
+        List<ExecutedStatement> executedStatements = List.copyOf(EXECUTED_STATEMENTS);
+        assertFalse(executedStatements.isEmpty(), method);
+        for (ExecutedStatement executedStatement : executedStatements) {
+            String plan = explain(executedStatement);
+            assertFalse(plan.contains("tablescan"), method + ": " + plan);
+            assertTrue(plan.contains(queryPlan.index()), method + ": " + plan);
+        }
+    }
+
+    private record QueryPlan(String index, Consumer<FileDataRepository> call) {
+    }
+
+    private record ExecutedStatement(String sql, Map<Integer, Object> parameters) {
+    }
+
+}
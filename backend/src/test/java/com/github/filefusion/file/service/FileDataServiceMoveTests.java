@@ -0,0 +1,106 @@
+package com.github.filefusion.file.service;
+
+import com.github.filefusion.common.FileProperties;
+import com.github.filefusion.constant.RedisAttribute;
+import com.github.filefusion.event.FileUploadSuccessEvent;
+import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.repository.FileDataRepository;
+import com.github.filefusion.sys_config.service.SysConfigService;
+import com.github.filefusion.util.DistributedLock;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileDataServiceMoveTests
+ * <p>
+ * Runs the batched move of a large folder against a repository fake that pages ids like the database does.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class FileDataServiceMoveTests {
+
+    private static final int CHILD_COUNT = 12001;
+    private static final int MAX_BATCHES = 10;
+
+    @Test
+    void batchRenameInSameParentUpdatesEveryChildOnce() {
+        FileDataRepository fileDataRepository = mock(FileDataRepository.class);
+        FileData parent = file("p1", null, "p1", "/");
+        FileData folder = file("f0", "p1", "p1/old", "/p1/");
+        when(fileDataRepository.findFirstByUserIdAndId("u1", "f0")).thenReturn(Optional.of(folder));
+        when(fileDataRepository.findFirstByUserIdAndIdAndDeletedFalse("u1", "p1")).thenReturn(Optional.of(parent));
+        when(fileDataRepository.countByTreePathStartingWith("/p1/f0/")).thenReturn(50001L);
+
+        TreeSet<String> childIdSet = new TreeSet<>();
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            childIdSet.add("c%05d".formatted(i));
+        }
+        List<String> renamedIdList = new ArrayList<>();
+        boolean[] locked = {false};
+        int[] batches = {0};
+        when(fileDataRepository.findAllIdByTreePathStartingWith(eq("/p1/f0/"), anyString(), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    assertTrue(++batches[0] <= MAX_BATCHES, "batch loop does not advance");
+                    String lastId = invocation.getArgument(1);
+                    Pageable page = invocation.getArgument(2);
+                    return childIdSet.tailSet(lastId, false).stream().limit(page.getPageSize()).toList();
+                });
+        when(fileDataRepository.renameByIdIn(anyList(), anyInt(), anyString(), anyString(), any()))
+                .thenAnswer(invocation -> {
+                    List<String> idList = invocation.getArgument(0);
+                    assertTrue(locked[0], "batch runs outside the subtree lock");
+                    assertEquals("p1/old".length(), invocation.<Integer>getArgument(1));
+                    assertEquals("p1/renamed", invocation.getArgument(2));
+                    renamedIdList.addAll(idList);
+                    return idList.size();
+                });
+
+        DistributedLock distributedLock = mock(DistributedLock.class);
+        when(distributedLock.tryTreeLock(eq(RedisAttribute.LockType.file), eq(List.of("u1:p1/old", "u1:p1/renamed")),
+                isNull(), any(Runnable.class), any())).thenAnswer(invocation -> {
+            locked[0] = true;
+            try {
+                invocation.<Runnable>getArgument(3).run();
+            } finally {
+                locked[0] = false;
+            }
+            return DistributedLock.LockResult.acquired;
+        });
+
+        FileDataService fileDataService = new FileDataService(mock(RedissonClient.class), distributedLock,
+                mock(FileProperties.class), fileDataRepository, mock(SysConfigService.class),
+                mock(PlatformTransactionManager.class), mock(MultipartProperties.class),
+                mock(UploadSessionService.class), mock(FileUploadSuccessEvent.class), mock(MeterRegistry.class));
+        fileDataService.rename("u1", "f0", "renamed");
+
+        assertEquals(CHILD_COUNT, renamedIdList.size());
+        assertEquals(childIdSet, new TreeSet<>(renamedIdList));
+        verify(fileDataRepository, never()).moveByIdIn(anyList(), anyInt(), anyString(), anyInt(), anyString(), anyString(), any());
+        assertEquals("p1/renamed", folder.getPath());
+        assertEquals("/p1/", folder.getTreePath());
+        verify(fileDataRepository).saveAndFlush(folder);
+    }
+
+    private static FileData file(String id, String parentId, String path, String treePath) {
+        FileData file = new FileData();
+        file.setId(id);
+        file.setUserId("u1");
+        file.setParentId(parentId);
+        file.setName(path.substring(path.lastIndexOf('/') + 1));
+        file.setPath(path);
+        file.setTreePath(treePath);
+        return file;
+    }
+
+}
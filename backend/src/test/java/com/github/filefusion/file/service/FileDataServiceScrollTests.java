@@ -0,0 +1,84 @@
+package com.github.filefusion.file.service;
+
+import com.github.filefusion.common.FileProperties;
+import com.github.filefusion.common.HttpException;
+import com.github.filefusion.constant.FileAttribute;
+import com.github.filefusion.event.FileUploadSuccessEvent;
+import com.github.filefusion.file.entity.FileData;
+import com.github.filefusion.file.repository.FileDataRepository;
+import com.github.filefusion.sys_config.service.SysConfigService;
+import com.github.filefusion.util.DistributedLock;
+import com.github.filefusion.util.I18n;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileDataServiceScrollTests
+ * <p>
+ * Checks the page size is rejected with a bad request before the repository is queried.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class FileDataServiceScrollTests {
+
+    private static final Sort.Order ORDER = Sort.Order.asc(FileData.Fields.name);
+
+    private FileDataRepository fileDataRepository;
+    private FileDataService fileDataService;
+
+    @BeforeEach
+    void setUp() {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("i18n/messages");
+        new I18n(messageSource);
+        fileDataRepository = mock(FileDataRepository.class);
+        when(fileDataRepository.findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                anyString(), anyString(), anyString(), anyBoolean(), any(ScrollPosition.class), any(Limit.class), any(Sort.class)))
+                .thenReturn(Window.from(List.of(), index -> ScrollPosition.keyset()));
+        fileDataService = new FileDataService(mock(RedissonClient.class), mock(DistributedLock.class),
+                mock(FileProperties.class), fileDataRepository, mock(SysConfigService.class),
+                mock(PlatformTransactionManager.class), mock(MultipartProperties.class),
+                mock(UploadSessionService.class), mock(FileUploadSuccessEvent.class), mock(MeterRegistry.class));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {Integer.MIN_VALUE, -1, 0, FileAttribute.MAX_SCROLL_PAGE_SIZE + 1, Integer.MAX_VALUE})
+    void pageSizeOutOfRangeIsRejected(int pageSize) {
+        HttpException e = assertThrows(HttpException.class,
+                () -> fileDataService.scroll("u1", null, null, false, ORDER, pageSize, null, false));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+        verifyNoInteractions(fileDataRepository);
+    }
+
+    @Test
+    void pageSizeWithinRangeIsQueried() {
+        fileDataService.scroll("u1", null, null, false, ORDER, 1, null, false);
+        fileDataService.scroll("u1", null, null, false, ORDER, FileAttribute.MAX_SCROLL_PAGE_SIZE, null, false);
+        verify(fileDataRepository).findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                eq("u1"), eq(FileAttribute.PARENT_ROOT), eq("%"), eq(false), any(ScrollPosition.class), eq(Limit.of(1)), any(Sort.class));
+        verify(fileDataRepository).findAllByUserIdAndParentIdAndNameLikeAndDeleted(
+                eq("u1"), eq(FileAttribute.PARENT_ROOT), eq("%"), eq(false), any(ScrollPosition.class),
+                eq(Limit.of(FileAttribute.MAX_SCROLL_PAGE_SIZE)), any(Sort.class));
+    }
+
+}
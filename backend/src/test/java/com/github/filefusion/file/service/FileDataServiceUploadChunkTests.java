@@ -0,0 +1,100 @@
+package com.github.filefusion.file.service;
+
+import com.github.filefusion.common.FileProperties;
+import com.github.filefusion.common.HttpException;
+import com.github.filefusion.constant.FileAttribute;
+import com.github.filefusion.event.FileUploadSuccessEvent;
+import com.github.filefusion.file.repository.FileDataRepository;
+import com.github.filefusion.sys_config.service.SysConfigService;
+import com.github.filefusion.util.DistributedLock;
+import com.github.filefusion.util.I18n;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileDataServiceUploadChunkTests
+ * <p>
+ * Checks the chunk index is rejected before any lock is taken or anything is written.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class FileDataServiceUploadChunkTests {
+
+    private static final String HASH_VALUE = "a".repeat(64);
+    private static final String CHUNK_HASH_VALUE = "b".repeat(64);
+
+    @TempDir
+    private Path uploadDir;
+    private DistributedLock distributedLock;
+    private FileDataService fileDataService;
+
+    @BeforeEach
+    void setUp() {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("i18n/messages");
+        new I18n(messageSource);
+        FileProperties fileProperties = mock(FileProperties.class);
+        when(fileProperties.getUploadDir()).thenReturn(uploadDir);
+        MultipartProperties multipartProperties = mock(MultipartProperties.class);
+        when(multipartProperties.getMaxFileSize()).thenReturn(DataSize.ofMegabytes(10));
+        distributedLock = mock(DistributedLock.class);
+        fileDataService = new FileDataService(mock(RedissonClient.class), distributedLock,
+                fileProperties, mock(FileDataRepository.class), mock(SysConfigService.class),
+                mock(PlatformTransactionManager.class), multipartProperties,
+                mock(UploadSessionService.class), mock(FileUploadSuccessEvent.class), mock(MeterRegistry.class));
+    }
+
+    private HttpStatus uploadChunk(int chunkIndex) {
+        HttpException e = assertThrows(HttpException.class, () -> fileDataService.uploadChunk(
+                new ByteArrayInputStream(new byte[1]), 1, chunkIndex, CHUNK_HASH_VALUE, HASH_VALUE));
+        return e.getHttpStatus();
+    }
+
+    private boolean uploadDirIsEmpty() throws IOException {
+        try (Stream<Path> pathStream = Files.list(uploadDir)) {
+            return pathStream.findAny().isEmpty();
+        }
+    }
+
+    @Test
+    void negativeChunkIndexIsRejected() throws IOException {
+        assertEquals(HttpStatus.BAD_REQUEST, uploadChunk(-1));
+        verify(distributedLock, never()).tryTreeLock(any(), any(), any(), any(Runnable.class), any());
+        assertTrue(uploadDirIsEmpty());
+    }
+
+    @Test
+    void chunkIndexAboveMaximumIsRejected() throws IOException {
+        assertEquals(HttpStatus.BAD_REQUEST, uploadChunk(FileAttribute.MAX_CHUNK_COUNT));
+        assertEquals(HttpStatus.BAD_REQUEST, uploadChunk(Integer.MAX_VALUE));
+        verify(distributedLock, never()).tryTreeLock(any(), any(), any(), any(Runnable.class), any());
+        assertTrue(uploadDirIsEmpty());
+    }
+
+    @Test
+    void chunkIndexWithinBoundsReachesTheLock() {
+        assertEquals(HttpStatus.CONFLICT, uploadChunk(0));
+        assertEquals(HttpStatus.CONFLICT, uploadChunk(FileAttribute.MAX_CHUNK_COUNT - 1));
+        verify(distributedLock, times(2)).tryTreeLock(any(), any(), any(), any(Runnable.class), any());
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.github.filefusion.util.file;
+
+import org.bouncycastle.crypto.digests.Blake3Digest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Blake3TreeTests
+ * <p>
+ * Compares Blake3Tree with the BouncyCastle BLAKE3 digest, for whole input, split input and merged subtrees.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class Blake3TreeTests {
+
+    private static final int C = Blake3Tree.CHUNK_LEN;
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] expected(byte[] data) {
+        Blake3Digest digest = new Blake3Digest(Blake3Tree.OUT_LEN * 8);
+        digest.update(data, 0, data.length);
+        byte[] out = new byte[Blake3Tree.OUT_LEN];
+        digest.doFinal(out, 0);
+        return out;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 63, 64, 65, C - 1, C, C + 1, 2 * C, 3 * C + 7, 8 * C, 31 * C + 513, 64 * C + 1})
+    void hasherMatchesDigest(int size) {
+        byte[] data = data(size);
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher();
+        hasher.update(data, 0, data.length);
+        assertArrayEquals(expected(data), hasher.digest());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, C - 1, C, C + 1, 3 * C + 7, 17 * C + 100})
+    void splitUpdatesMatchDigest(int size) {
+        byte[] data = data(size);
+        int[] pieces = {1, 63, 64, 65, C - 1, C, C + 1};
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher();
+        int offset = 0;
+        for (int i = 0; offset < size; i++) {
+            int length = Math.min(pieces[i % pieces.length], size - offset);
+            hasher.update(data, offset, length);
+            offset += length;
+        }
+        assertArrayEquals(expected(data), hasher.digest());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 1",
+            "1, 1025",
+            "2, 4096",
+            "3, 3072",
+            "3, 9217",
+            "4, 16384",
+            "5, 20480",
+            "5, 21000",
+            "8, 65537"
+    })
+    void mergedSubtreesMatchDigest(int chunksPerPart, int size) {
+        byte[] data = data(size);
+        int partLen = chunksPerPart * C;
+        int fullParts = size / partLen;
+        if (fullParts * partLen == size) {
+            fullParts--;
+        }
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher();
+        for (int part = 0; part < fullParts; part++) {
+            Blake3Tree.SubtreeHasher subtreeHasher = new Blake3Tree.SubtreeHasher((long) part * chunksPerPart, chunksPerPart);
+            subtreeHasher.update(data, part * partLen, partLen);
+            List<Blake3Tree.Subtree> subtreeList = subtreeHasher.subtrees();
+            assertNotNull(subtreeList);
+            subtreeList.forEach(hasher::addSubtree);
+        }
+        int tail = fullParts * partLen;
+        hasher.update(data, tail, size - tail);
+        assertArrayEquals(expected(data), hasher.digest());
+    }
+
+    @Test
+    void hasherAtChunkOffsetMatchesSubtree() {
+        byte[] data = data(4 * C);
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher(4);
+        hasher.update(data, 0, data.length);
+        Blake3Tree.SubtreeHasher subtreeHasher = new Blake3Tree.SubtreeHasher(4, 4);
+        subtreeHasher.update(data, 0, data.length);
+        assertArrayEquals(hasher.chainingValue(), subtreeHasher.subtrees().getFirst().chainingValue());
+    }
+
+    @Test
+    void incompleteSubtreeInputHasNoSubtrees() {
+        Blake3Tree.SubtreeHasher subtreeHasher = new Blake3Tree.SubtreeHasher(0, 2);
+        subtreeHasher.update(data(C + 1), 0, C + 1);
+        assertNull(subtreeHasher.subtrees());
+    }
+
+    @Test
+    void misalignedSubtreeIsRejected() {
+        Blake3Tree.Hasher hasher = new Blake3Tree.Hasher();
+        hasher.update(data(C), 0, C);
+        assertThrows(IllegalStateException.class,
+                () -> hasher.addSubtree(new Blake3Tree.Subtree(2, new byte[Blake3Tree.OUT_LEN])));
+    }
+
+}
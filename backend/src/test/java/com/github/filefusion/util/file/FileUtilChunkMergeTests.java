@@ -0,0 +1,122 @@
+package com.github.filefusion.util.file;
+
+import com.github.filefusion.util.EncryptUtil;
+import org.bouncycastle.crypto.digests.Blake3Digest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * FileUtilChunkMergeTests
+ * <p>
+ * Merges chunk files written out of order and checks the merged bytes and hash, with and without usable chunk trees.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class FileUtilChunkMergeTests {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    private Path tempDir;
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static String hash(byte[] data) {
+        Blake3Digest digest = new Blake3Digest(256);
+        digest.update(data, 0, data.length);
+        byte[] out = new byte[32];
+        digest.doFinal(out, 0);
+        return EncryptUtil.bytesToHex(out);
+    }
+
+    /**
+     * write the chunks from the last to the first, with their trees when withTree is set
+     */
+    private Path writeChunks(byte[] data, int chunkSize, boolean withTree) throws IOException {
+        Path chunkDirPath = Files.createDirectories(tempDir.resolve("chunks"));
+        int chunkCount = (data.length + chunkSize - 1) / chunkSize;
+        for (int i = chunkCount - 1; i >= 0; i--) {
+            Path chunkPath = chunkDirPath.resolve(String.valueOf(i));
+            Files.write(chunkPath, Arrays.copyOfRange(data, i * chunkSize, Math.min(data.length, (i + 1) * chunkSize)));
+            if (withTree) {
+                FileUtil.calculateChunkHash(chunkPath, i);
+            }
+        }
+        return chunkDirPath;
+    }
+
+    private Path targetPath() {
+        return tempDir.resolve("merged").resolve("file");
+    }
+
+    private void assertMerged(byte[] data, String hashValue) throws IOException {
+        assertEquals(hash(data), hashValue);
+        assertArrayEquals(data, Files.readAllBytes(targetPath()));
+        assertFalse(Files.exists(tempDir.resolve("chunks")));
+    }
+
+    private void assertMerged(byte[] data, int chunkSize, boolean withTree) throws IOException {
+        assertMerged(data, FileUtil.chunkMerge(writeChunks(data, chunkSize, withTree), targetPath()));
+        int chunkCount = (data.length + chunkSize - 1) / chunkSize;
+        assertMerged(data, FileUtil.chunkMerge(writeChunks(data, chunkSize, withTree), chunkCount, targetPath()));
+    }
+
+    @Test
+    void mergeWithChunkTreesAndShortLastChunk() throws IOException {
+        assertMerged(data(3 * 5 * MB + 3 * MB / 2), 5 * MB, true);
+    }
+
+    @Test
+    void mergeOrdersChunksByIndex() throws IOException {
+        assertMerged(data(12 * 2048 + 100), 2048, true);
+    }
+
+    @Test
+    void mergeWithoutChunkTreesHashesEverything() throws IOException {
+        assertMerged(data(3 * 5 * MB + 7), 5 * MB, false);
+    }
+
+    @Test
+    void mergeWithUnalignedChunksHashesEverything() throws IOException {
+        assertMerged(data(5 * 5000 + 1234), 5000, true);
+    }
+
+    @Test
+    void mergeWithMisplacedChunkTreeHashesEverything() throws IOException {
+        byte[] data = data(4 * 8192 + 1);
+        Path chunkDirPath = writeChunks(data, 8192, true);
+        Files.copy(FileUtil.getChunkTreePath(chunkDirPath.resolve("0")), FileUtil.getChunkTreePath(chunkDirPath.resolve("2")),
+                StandardCopyOption.REPLACE_EXISTING);
+        assertMerged(data, FileUtil.chunkMerge(chunkDirPath, targetPath()));
+    }
+
+    @Test
+    void mergeWithMissingChunkTreeHashesEverything() throws IOException {
+        byte[] data = data(4 * 8192 + 1);
+        Path chunkDirPath = writeChunks(data, 8192, true);
+        Files.delete(FileUtil.getChunkTreePath(chunkDirPath.resolve("1")));
+        assertMerged(data, FileUtil.chunkMerge(chunkDirPath, 5, targetPath()));
+    }
+
+    @Test
+    void mergeSingleChunk() throws IOException {
+        assertMerged(data(1000), 4096, true);
+    }
+
+}
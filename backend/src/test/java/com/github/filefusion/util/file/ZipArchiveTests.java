@@ -0,0 +1,202 @@
+package com.github.filefusion.util.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ZipArchiveTests
+ * <p>
+ * Reads the archives back with java.util.zip and checks byte range slices against the whole stored archive.
+ *
+ * @author hackyo
+ * @since 2022/4/1
+ */
+class ZipArchiveTests {
+
+    private static final LocalDateTime LAST_MODIFIED = LocalDateTime.of(2022, 4, 1, 12, 30, 10);
+
+    @TempDir
+    private Path tempDir;
+    private final Map<String, byte[]> contentMap = new LinkedHashMap<>();
+    private final Map<String, Long> crcCache = new HashMap<>();
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] text(int size) {
+        byte[] line = "FileFusion zip archive line, 文件融合\n".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = line[i % line.length];
+        }
+        return data;
+    }
+
+    private static ZipArchive.Transfer transfer(OutputStream out) {
+        return (path, start, end) -> out.write(Files.readAllBytes(path), (int) start, (int) (end - start));
+    }
+
+    private ZipArchive.Entry file(String name, String hashValue, byte[] content, boolean compressible) throws IOException {
+        Path path = tempDir.resolve(hashValue);
+        Files.write(path, content);
+        contentMap.put(name, content);
+        return new ZipArchive.Entry(name, hashValue, path, content.length, LAST_MODIFIED, compressible);
+    }
+
+    private ZipArchive.Entry directory(String name) {
+        contentMap.put(name, null);
+        return new ZipArchive.Entry(name, null, null, 0, LAST_MODIFIED, false);
+    }
+
+    private ZipArchive archive(boolean large) throws IOException {
+        List<ZipArchive.Entry> entryList = new ArrayList<>();
+        entryList.add(directory("目录/"));
+        entryList.add(file("目录/empty.txt", "empty", new byte[0], true));
+        entryList.add(file("目录/文档.txt", "text", text(large ? 3 * 1024 * 1024 + 17 : 5000), true));
+        entryList.add(file("data.bin", "data", random(large ? 1024 * 1024 + 3 : 3000), true));
+        entryList.add(file("data copy.bin", "data", random(large ? 1024 * 1024 + 3 : 3000), true));
+        entryList.add(file("note.md", "note", text(100), false));
+        return new ZipArchive(entryList);
+    }
+
+    private byte[] write(ZipArchive zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zip.write(out, transfer(out), crcCache, crcCache::put);
+        return out.toByteArray();
+    }
+
+    private byte[] write(ZipArchive zip, long start, long end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zip.write(out, transfer(out), start, end, crcCache, crcCache::put);
+        return out.toByteArray();
+    }
+
+    private byte[] writeAdaptive(ZipArchive zip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zip.writeAdaptive(out, transfer(out), crcCache, crcCache::put);
+        return out.toByteArray();
+    }
+
+    private byte[] slices(ZipArchive zip, long[] cutList) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = 0;
+        for (long cut : cutList) {
+            out.write(write(zip, start, cut));
+            start = cut;
+        }
+        out.write(write(zip, start, zip.size()));
+        return out.toByteArray();
+    }
+
+    private Map<String, Integer> assertReadable(byte[] archive) throws IOException {
+        Map<String, Integer> methodMap = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive), StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                assertTrue(contentMap.containsKey(entry.getName()), entry.getName());
+                byte[] content = contentMap.get(entry.getName());
+                assertEquals(content == null, entry.isDirectory(), entry.getName());
+                assertArrayEquals(content == null ? new byte[0] : content, in.readAllBytes(), entry.getName());
+                assertEquals(LAST_MODIFIED, entry.getTimeLocal(), entry.getName());
+                methodMap.put(entry.getName(), entry.getMethod());
+            }
+        }
+        assertEquals(contentMap.keySet(), methodMap.keySet());
+        Path archivePath = tempDir.resolve("archive.zip");
+        Files.write(archivePath, archive);
+        try (ZipFile zipFile = new ZipFile(archivePath.toFile(), StandardCharsets.UTF_8)) {
+            assertEquals(contentMap.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> content : contentMap.entrySet()) {
+                ZipEntry entry = zipFile.getEntry(content.getKey());
+                assertNotNull(entry, content.getKey());
+                assertEquals(methodMap.get(content.getKey()), entry.getMethod(), content.getKey());
+                if (content.getValue() != null) {
+                    assertArrayEquals(content.getValue(), zipFile.getInputStream(entry).readAllBytes(), content.getKey());
+                }
+            }
+        }
+        return methodMap;
+    }
+
+    @Test
+    void writeIsReadable() throws IOException {
+        ZipArchive zip = archive(true);
+        byte[] archive = write(zip);
+        assertEquals(zip.size(), archive.length);
+        assertTrue(assertReadable(archive).values().stream().allMatch(method -> method == ZipEntry.STORED));
+        assertEquals(Set.of("empty", "text", "data", "note"), crcCache.keySet());
+        assertArrayEquals(archive, write(zip));
+    }
+
+    @Test
+    void writeAdaptiveIsReadable() throws IOException {
+        ZipArchive zip = archive(true);
+        Map<String, Integer> methodMap = assertReadable(writeAdaptive(zip));
+        assertEquals(ZipEntry.DEFLATED, methodMap.get("目录/文档.txt"));
+        assertEquals(ZipEntry.STORED, methodMap.get("目录/empty.txt"));
+        assertEquals(ZipEntry.STORED, methodMap.get("data.bin"));
+        assertEquals(ZipEntry.STORED, methodMap.get("note.md"));
+        assertEquals(Set.of("empty", "text", "data", "note"), crcCache.keySet());
+        assertReadable(write(zip));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 13, 4096})
+    void slicesMatchWrite(int step) throws IOException {
+        ZipArchive zip = archive(false);
+        byte[] archive = write(zip);
+        long[] cutList = new long[(int) ((zip.size() - 1) / step)];
+        for (int i = 0; i < cutList.length; i++) {
+            cutList[i] = (long) (i + 1) * step;
+        }
+        crcCache.clear();
+        assertArrayEquals(archive, slices(zip, cutList));
+    }
+
+    @Test
+    void randomSlicesMatchWrite() throws IOException {
+        ZipArchive zip = archive(true);
+        byte[] archive = write(zip);
+        crcCache.clear();
+        long[] cutList = new Random(zip.size()).longs(200, 1, zip.size()).sorted().distinct().toArray();
+        assertArrayEquals(archive, slices(zip, cutList));
+    }
+
+    @Test
+    void slicesOutsideTheArchiveAreEmpty() throws IOException {
+        ZipArchive zip = archive(false);
+        assertEquals(0, write(zip, zip.size(), zip.size() + 10).length);
+        assertEquals(0, write(zip, 10, 10).length);
+        assertArrayEquals(write(zip), write(zip, -10, zip.size() + 10));
+    }
+
+    @Test
+    void emptyArchiveIsReadable() throws IOException {
+        ZipArchive zip = new ZipArchive(List.of());
+        byte[] archive = write(zip);
+        assertEquals(zip.size(), archive.length);
+        assertReadable(archive);
+        assertReadable(writeAdaptive(zip));
+    }
+
+}